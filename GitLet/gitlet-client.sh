@@ -0,0 +1,17 @@
+#!/bin/sh
+# Thin client for a running "gitlet serve": sends the command line to the
+# server of the repository in the current directory, without starting a
+# JVM, and prints the command's output. Each argument is followed by a
+# NUL byte; the server answers once the request side is shut down.
+# Usage: gitlet-client.sh COMMAND [OPERAND ...]
+
+SOCKET=.gitlet/daemon.sock
+if [ ! -S "$SOCKET" ]; then
+    echo "No Gitlet server is running." >&2
+    exit 1
+fi
+if command -v socat > /dev/null 2>&1; then
+    printf '%s\0' "$@" | socat -t 3600 - "UNIX-CONNECT:$SOCKET"
+else
+    printf '%s\0' "$@" | nc -N -U "$SOCKET"
+fi
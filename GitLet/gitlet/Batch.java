@@ -0,0 +1,149 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/** This class represents a batch: a script of Gitlet commands run one
+ * after the other in one JVM, against one repository state kept in
+ * memory.
+ *
+ * "gitlet batch FILE" reads the script from FILE, and "gitlet batch -"
+ * from the standard input. Each line is one command, its words split
+ * like a shell would: separated by blanks, with double quotes around a
+ * word holding blanks (a backslash escapes a quote or a backslash).
+ * Blank lines and lines starting with # are skipped. While a batch
+ * runs, HEAD, the refs, the staging area and the stat cache are only
+ * written once, at the end, or when the script says "checkpoint". The
+ * first command that fails stops the batch: its error is printed with
+ * the line it was on, what it changed in the state kept in memory is
+ * undone, and what the commands before it did is written.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Batch {
+
+    /** Function that runs a batch.
+     * @param args the command (batch) and the script's file name, or -
+     *             for the standard input.
+     */
+    static void run(String[] args) {
+        Gitlet.validateInput(args, 2);
+        if (Gitlet.isDeferring()) {
+            throw new GitletException("Cannot run a batch in a batch.");
+        }
+        Reader source;
+        if (args[1].equals("-")) {
+            source = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+        } else {
+            File file = new File(args[1]);
+            if (!file.isFile()) {
+                throw new GitletException("File does not exist.");
+            }
+            try {
+                source = Files.newBufferedReader(file.toPath());
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        Gitlet.deferWrites();
+        try (BufferedReader script = new BufferedReader(source)) {
+            int lineNumber = 0;
+            for (String line = script.readLine(); line != null;
+                 line = script.readLine()) {
+                lineNumber += 1;
+                if (!runLine(line)) {
+                    Gitlet.flush();
+                    throw new GitletException("Batch stopped at line "
+                            + lineNumber + ": " + line.strip());
+                }
+            }
+            Gitlet.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            Gitlet.stopDeferring();
+        }
+    }
+
+    /** Function that runs one line of a script.
+     * @param line the line.
+     * @return false iff its command failed, after printing its error.
+     */
+    private static boolean runLine(String line) {
+        String[] words;
+        try {
+            words = split(line);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return false;
+        }
+        if (words.length == 0 || words[0].startsWith("#")) {
+            return true;
+        }
+        Gitlet.mark();
+        try {
+            if (words[0].equals("checkpoint")) {
+                Gitlet.validateInput(words, 1);
+                Gitlet.flush();
+            } else if (words[0].equals("batch")
+                       || words[0].equals("serve")) {
+                throw new GitletException("Cannot run " + words[0]
+                        + " in a batch.");
+            } else {
+                Main.run(words);
+            }
+        } catch (GitletException excp) {
+            Gitlet.rollback();
+            System.out.println(excp.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /** Function that splits a line of a script into words.
+     * @param line the line.
+     * @return its words.
+     */
+    static String[] split(String line) {
+        List<String> words = new ArrayList<>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int k = 0; k < line.length(); k += 1) {
+            char c = line.charAt(k);
+            if (!quoted && Character.isWhitespace(c)) {
+                if (word != null) {
+                    words.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\\' && k + 1 < line.length()
+                       && (line.charAt(k + 1) == '"'
+                           || line.charAt(k + 1) == '\\')) {
+                k += 1;
+                word.append(line.charAt(k));
+            } else {
+                word.append(c);
+            }
+        }
+        if (quoted) {
+            throw new GitletException("Unterminated quote.");
+        }
+        if (word != null) {
+            words.add(word.toString());
+        }
+        return words.toArray(new String[0]);
+    }
+}
@@ -1,9 +1,49 @@
 package gitlet;
 
-import java.io.Serializable;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /** This class stores all the file versions in gitlet in a Blob directory.
+ * A blob is named by the hash of the file's contents alone (SHA-1, or
+ * SHA-256 if the repository was made with init --hash=sha256, see
+ * Utils.newDigest), so identical files share a blob whatever their
+ * names, and is stored zlib-compressed: one kind byte followed by the
+ * deflated contents.
+ * Hashing and compression are done in a single streaming pass over the
+ * file through a FileChannel and direct buffers, so the contents are
+ * never held in the heap as a whole; contents are only ever handled as
+ * bytes, so any file (text or binary) is stored exactly.
+ * Contents that do not compress (images, archives, models) are stored
+ * raw instead, and are checked out with FileChannel.transferTo (or
+ * written straight from the mapped pack) without passing through the
+ * heap.
+ * When the delta setting is on, a new version of a file may instead be
+ * stored as a Delta against the previous version, if that is smaller.
+ * Delta chains are at most delta.depth long, and recently reconstructed
+ * contents are cached so that neighbouring versions share the work.
+ * Blobs written by earlier versions of gitlet (serialized Blob objects)
+ * are still readable, and are rewritten compressed the first time they
+ * are read.
  *  @author Hiva Mohammadzadeh
  */
 
@@ -34,34 +74,481 @@ public class Blob implements Serializable {
     }
 
     public String getContent() {
+        if (data != null) {
+            return new String(data, StandardCharsets.UTF_8);
+        }
         return info;
 
     }
     public void setContent(String givenContent) {
         info = givenContent;
+        data = null;
+    }
+
+    public byte[] getData() {
+        if (data == null) {
+            return info.getBytes(StandardCharsets.UTF_8);
+        }
+        return data;
+    }
+
+    /** Function that is used to get the blob object with the given blobID.
+     * Commits only hold blob ids, so this is how the content of a tracked
+     * file is read back when it is needed as a whole. The contents are
+     * kept as bytes (see getData).
+     * @param blobID String representing the Id of the blob.
+     * @return The object that was read.
+     */
+    public static Blob getBlob(String blobID) {
+        Blob result = new Blob(null);
+        try (InputStream in = openBlob(blobID)) {
+            result.data = in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Function that writes the contents of the blob with the given id to
+     * the given file, decompressing it on the fly.
+     * Used by checkout and reset. The file is then recorded in the stat
+     * cache, so that it is not hashed again while it stays unchanged.
+     * @param blobID String representing the Id of the blob.
+     * @param dest The working file to overwrite.
+     */
+    public static void checkoutBlob(String blobID, File dest) {
+        File parent = dest.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (FileChannel out = FileChannel.open(dest.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!copyRaw(blobID, out)) {
+                try (InputStream in = openBlob(blobID)) {
+                    in.transferTo(Channels.newOutputStream(out));
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        StatIndex.get().record(dest, blobID);
+    }
+
+    /** Function that copies the contents of a blob stored raw to OUT
+     * without reading them into the heap where the store allows it: a
+     * loose blob with FileChannel.transferTo, a packed one from the
+     * mapped pack.
+     * @param blobID String representing the Id of the blob.
+     * @param out the channel to write to.
+     * @return false, having written nothing, if the blob is not raw.
+     */
+    private static boolean copyRaw(String blobID, FileChannel out)
+        throws IOException {
+        try (InputStream in = Gitlet.blobs.stream(blobID)) {
+            if (in == null || in.read() != RAW) {
+                return false;
+            }
+        }
+        return Gitlet.blobs.transferTo(blobID, 1, out);
+    }
+
+    /** Function that returns the id a file would have as a blob, without
+     * storing it.
+     * @param file The file to hash.
+     * @return the hash of the file's contents.
+     */
+    static String hashFile(File file) {
+        MessageDigest digest = Utils.newDigest();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    /** Function that opens a stream over the contents of the blob with the
+     * given id. Legacy (uncompressed, serialized) blobs are migrated to the
+     * compressed format as a side effect.
+     * @param blobID String representing the Id of the blob.
+     * @return a stream of the uncompressed contents.
+     */
+    static InputStream openBlob(String blobID) throws IOException {
+        byte[] cached = cachedContents(blobID);
+        if (cached != null) {
+            return new ByteArrayInputStream(cached);
+        }
+        InputStream in = openStored(blobID);
+        in.mark(1);
+        int kind = in.read();
+        if (kind == DEFLATED) {
+            return new InflaterInputStream(in);
+        }
+        if (kind == RAW) {
+            return in;
+        }
+        if (kind == DELTA) {
+            return new ByteArrayInputStream(reconstruct(blobID, in));
+        }
+        if (kind == LEGACY_MAGIC) {
+            in.reset();
+            byte[] content = readLegacy(in);
+            migrate(blobID, content);
+            return new ByteArrayInputStream(content);
+        }
+        in.close();
+        throw new IllegalArgumentException("corrupted blob " + blobID);
+    }
+
+    /** Function that opens a stream over the stored bytes of the blob with
+     * the given id, loose or packed, starting with its kind byte.
+     * @param blobID String representing the Id of the blob.
+     * @return a buffered stream of the stored blob.
+     */
+    private static InputStream openStored(String blobID) throws IOException {
+        InputStream stored = Gitlet.blobs.stream(blobID);
+        if (stored == null) {
+            throw new IllegalArgumentException("no such blob " + blobID);
+        }
+        return new BufferedInputStream(stored, BUFFER_SIZE);
+    }
+
+    /** Function that returns the whole contents of the blob with the
+     * given id, going through the reconstruction cache.
+     * @param blobID String representing the Id of the blob.
+     * @return the contents.
+     */
+    private static byte[] contentsOf(String blobID) throws IOException {
+        byte[] result = cachedContents(blobID);
+        if (result == null) {
+            try (InputStream in = openBlob(blobID)) {
+                result = in.readAllBytes();
+            }
+            cacheContents(blobID, result);
+        }
+        return result;
+    }
+
+    /** Function that rebuilds the contents of a blob stored as a delta.
+     * @param blobID String representing the Id of the blob.
+     * @param in the stored blob, positioned after its kind byte.
+     * @return the contents.
+     */
+    private static byte[] reconstruct(String blobID, InputStream in)
+        throws IOException {
+        try (DataInputStream delta =
+                 new DataInputStream(new InflaterInputStream(in))) {
+            Delta.Header header = Delta.readHeader(delta);
+            byte[] result = Delta.apply(contentsOf(header.baseID), delta);
+            cacheContents(blobID, result);
+            return result;
+        }
+    }
+
+    /** Function that looks up recently reconstructed contents. Like
+     * cacheContents, it may be called from several threads at once.
+     * @param blobID String representing the Id of the blob.
+     * @return the contents, or null if they are not cached.
+     */
+    private static synchronized byte[] cachedContents(String blobID) {
+        return RECONSTRUCTED.get(blobID);
+    }
+
+    /** Function that records recently reconstructed contents, dropping the
+     * least recently used ones to keep the cache under its size.
+     * @param blobID String representing the Id of the blob.
+     * @param content the contents of the blob.
+     */
+    private static synchronized void cacheContents(String blobID,
+                                                   byte[] content) {
+        if (content.length > RECONSTRUCTED_LIMIT
+                || RECONSTRUCTED.containsKey(blobID)) {
+            return;
+        }
+        RECONSTRUCTED.put(blobID, content);
+        reconstructedBytes += content.length;
+        Iterator<byte[]> iter = RECONSTRUCTED.values().iterator();
+        while (reconstructedBytes > RECONSTRUCTED_LIMIT) {
+            reconstructedBytes -= iter.next().length;
+            iter.remove();
+        }
+    }
+
+    /** Function that returns the length of the delta chain the blob with
+     * the given id is stored as.
+     * @param blobID String representing the Id of the blob.
+     * @return 0 if the blob is stored whole, else the chain's length.
+     */
+    private static int deltaDepth(String blobID) throws IOException {
+        try (InputStream in = openStored(blobID)) {
+            if (in.read() != DELTA) {
+                return 0;
+            }
+            DataInputStream delta =
+                new DataInputStream(new InflaterInputStream(in));
+            return Delta.readHeader(delta).depth;
+        }
+    }
+
+    /** Function that returns the id of the blob the blob with the given
+     * id is stored as a delta against.
+     * @param blobID String representing the Id of the blob.
+     * @return the id of its base, or null if the blob is stored whole.
+     */
+    static String deltaBase(String blobID) {
+        try (InputStream in = openStored(blobID)) {
+            if (in.read() != DELTA) {
+                return null;
+            }
+            DataInputStream delta =
+                new DataInputStream(new InflaterInputStream(in));
+            return Delta.readHeader(delta).baseID;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that returns true iff a blob with the given id is stored,
+     * either loose in the Blob directory or in the pack.
+     * @param blobID String representing the Id of the blob.
+     * @return whether the blob exists.
+     */
+    static boolean hasBlob(String blobID) {
+        return Gitlet.blobs.has(blobID);
+    }
+
+    /** Function that reads the contents of a legacy blob object, which is
+     * a serialized Blob, and closes the stream.
+     * @param in The stream of the legacy blob.
+     * @return the contents of the blob.
+     */
+    private static byte[] readLegacy(InputStream in) throws IOException {
+        Blob legacy;
+        try (ObjectInputStream objects = new ObjectInputStream(in)) {
+            legacy = (Blob) objects.readObject();
+        } catch (ClassNotFoundException | ClassCastException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return legacy.getContent().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Function that rewrites a legacy blob object in the compressed
+     * format under the same name.
+     * @param blobID String representing the Id of the blob.
+     * @param content The contents of the blob.
+     */
+    private static void migrate(String blobID, byte[] content)
+        throws IOException {
+        File temp = newTempFile();
+        try (OutputStream out = Files.newOutputStream(temp.toPath());
+             OutputStream deflater = new DeflaterOutputStream(out)) {
+            out.write(DEFLATED);
+            deflater.write(content);
+        }
+        Gitlet.blobs.put(blobID, temp);
     }
 
     /** Function that reads the file and creates a blob from it:
-     * It reads the content of the file and stores it into info,
-     * gets the name and sets it, creates a blob object out of
-     * the content that it read and writes the new blob object
-     * to the Blob directory.
+     * It streams the content of the file once, hashing it and
+     * compressing it into a temporary file at the same time, and then
+     * moves the temporary file into the Blob directory under the
+     * content's hash. Identical contents share one blob.
      * @return blobID The id of the created blob object
      */
     public String saveTheCurrentBlob() {
+        return saveTheCurrentBlob(null);
+    }
 
-        info = Utils.readContentsAsString(file);
+    /** Function that reads the file and creates a blob from it, like
+     * saveTheCurrentBlob(), except that when the delta setting is on, the
+     * blob is stored as a delta against the blob with id BASEID if that
+     * takes less room. Contents that deflate to no less than their size
+     * are stored raw.
+     * @param baseID The id of the previous version of the file, or null.
+     * @return blobID The id of the created blob object
+     */
+    public String saveTheCurrentBlob(String baseID) {
         setFileName(file.getName());
-        String blobID = Utils.sha1(Utils.serialize(this));
-        File newBlob = Utils.join(Gitlet.BLOBS_DIRECTORY, blobID);
-        Utils.writeObject(newBlob, this);
-        return blobID;
+        MessageDigest digest = Utils.newDigest();
+        File temp = newTempFile();
+        try {
+            long size;
+            try (FileChannel in = FileChannel.open(file.toPath());
+                 FileChannel out = FileChannel.open(temp.toPath(),
+                         StandardOpenOption.WRITE)) {
+                size = deflate(in, out, digest);
+                if (out.size() > size) {
+                    out.truncate(0);
+                    writeFully(out, ByteBuffer.wrap(new byte[] {RAW}));
+                    for (long done = 0; done < size; ) {
+                        done += in.transferTo(done, size - done, out);
+                    }
+                }
+            }
+            String blobID = Utils.toHex(digest.digest());
+            if (hasBlob(blobID)) {
+                Files.delete(temp.toPath());
+            } else {
+                if (baseID != null && Config.getBoolean(Config.DELTA)
+                        && hasBlob(baseID)) {
+                    saveAsDelta(blobID, baseID, temp);
+                }
+                Gitlet.blobs.put(blobID, temp);
+            }
+            return blobID;
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
     }
 
+    /** Function that writes the kind byte DEFLATED and the deflated
+     * contents of IN to OUT, updating DIGEST with the contents. Only
+     * direct buffers are used, so the contents do not go through the
+     * heap. The deflater is given its own view of the input buffer: it
+     * keeps it until the next setInput, and must not see it refilled.
+     * @param in The contents to store.
+     * @param out The channel to write the blob to.
+     * @param digest The digest to update.
+     * @return the number of bytes of contents.
+     */
+    private static long deflate(FileChannel in, FileChannel out,
+                                MessageDigest digest) throws IOException {
+        ByteBuffer input = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        Deflater deflater = new Deflater();
+        long size = 0;
+        try {
+            output.put((byte) DEFLATED);
+            while (in.read(input) != -1) {
+                input.flip();
+                size += input.remaining();
+                deflater.setInput(input.duplicate());
+                digest.update(input);
+                while (!deflater.needsInput()) {
+                    drain(deflater, output, out);
+                }
+                input.clear();
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(deflater, output, out);
+            }
+            output.flip();
+            writeFully(out, output);
+        } finally {
+            deflater.end();
+        }
+        return size;
+    }
+
+    /** Function that deflates into OUTPUT, writing it to OUT when full.
+     * @param deflater The deflater.
+     * @param output The output buffer.
+     * @param out The channel to write to.
+     */
+    private static void drain(Deflater deflater, ByteBuffer output,
+                              FileChannel out) throws IOException {
+        deflater.deflate(output);
+        if (!output.hasRemaining()) {
+            output.flip();
+            writeFully(out, output);
+            output.clear();
+        }
+    }
+
+    /** Function that writes all of BUFFER to OUT.
+     * @param out The channel to write to.
+     * @param buffer The bytes to write.
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /** Function that replaces the stored form of a new blob, in TEMP, with
+     * a delta against the blob BASEID when the delta is smaller and the
+     * delta chain would not get longer than delta.depth.
+     * @param blobID The id of the new blob.
+     * @param baseID The id of the previous version of the file.
+     * @param temp The file holding the new blob, stored whole.
+     */
+    private void saveAsDelta(String blobID, String baseID, File temp)
+        throws IOException {
+        int depth = deltaDepth(baseID) + 1;
+        if (depth > Config.getInt(Config.DELTA_DEPTH)) {
+            return;
+        }
+        byte[] target = Utils.readContents(file);
+        if (!Utils.hash(target).equals(blobID)) {
+            return;
+        }
+        byte[] delta = Delta.encode(baseID, depth, contentsOf(baseID),
+                target);
+        File deltaTemp = newTempFile();
+        try (OutputStream out = Files.newOutputStream(deltaTemp.toPath());
+             OutputStream deflater = new DeflaterOutputStream(out)) {
+            out.write(DELTA);
+            deflater.write(delta);
+        }
+        if (deltaTemp.length() < temp.length()) {
+            Files.move(deltaTemp.toPath(), temp.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(deltaTemp.toPath());
+        }
+    }
+
+    /** Function that creates an empty temporary file inside the gitlet
+     * repository, on the same file system as the objects, so that it can
+     * be renamed into place.
+     * @return the temporary file.
+     */
+    static File newTempFile() {
+        try {
+            return Files.createTempFile(Gitlet.GITLET_DIRECTORY.toPath(),
+                    "tmp", null).toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Kind byte of a blob stored as deflated contents.*/
+    static final int DEFLATED = 'z';
+    /** Kind byte of a blob stored as raw (uncompressed) contents.*/
+    static final int RAW = 'r';
+    /** Kind byte of a blob stored as a delta against another blob.*/
+    static final int DELTA = 'd';
+    /** First byte of a legacy blob, which is a serialized Blob object.*/
+    static final int LEGACY_MAGIC = 0xac;
+    /** Size of the buffers used to stream file contents.*/
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Largest number of bytes of reconstructed contents kept in memory.*/
+    private static final long RECONSTRUCTED_LIMIT = 16L * 1024 * 1024;
+    /** Recently reconstructed contents, by blob id, in access order.*/
+    private static final LinkedHashMap<String, byte[]> RECONSTRUCTED =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Number of bytes of contents in RECONSTRUCTED.*/
+    private static long reconstructedBytes;
+
+    /** Pinned so that legacy serialized blobs remain readable.*/
+    private static final long serialVersionUID = -6434946348669463375L;
+
     /** The file that represents the blob.*/
     private File file;
     /** Name of the blob file.*/
     private String fileName;
-    /** Content of the blob file.*/
+    /** Content of the blob file, as kept by legacy serialized blobs.*/
     private String info;
+    /** Content of the blob, as read by getBlob.*/
+    private transient byte[] data;
 }
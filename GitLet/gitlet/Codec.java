@@ -0,0 +1,273 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** This class represents the binary encoding of commits, trees and the
+ * staging area, used instead of Java serialization: it is smaller,
+ * faster to read and write, and does not depend on class descriptors,
+ * so an object's id (the hash of its encoding) is defined by its
+ * contents alone.
+ *
+ * An encoding starts with the kind of object (one byte) and the version
+ * of its format (one byte). Numbers are unsigned varints (seven bits per
+ * byte, low bits first, the high bit set on every byte but the last);
+ * strings are the varint of their length in UTF-8 bytes plus one (0 for
+ * null) followed by those bytes; ids are their binary bytes (20 for
+ * SHA-1, 32 for SHA-256); maps are the varint of their size followed by
+ * their entries sorted by key, so two equal objects always have the same
+ * encoding. Objects written by
+ * Java serialization start with the byte 0xAC, which is no kind, and
+ * are still read the old way.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Codec {
+
+    /** Codec Constructor: an encoder for an object of the given kind.
+     * @param kind the kind of object.
+     */
+    Codec(byte kind) {
+        bytes = new byte[INITIAL_SIZE];
+        putByte(kind);
+        putByte(VERSION);
+    }
+
+    /** Codec Constructor: a decoder of an encoded object.
+     * @param encoded the encoding.
+     * @param kind the kind of object it must be.
+     */
+    Codec(byte[] encoded, byte kind) {
+        bytes = encoded;
+        if (encoded.length < 2 || encoded[0] != kind) {
+            throw new IllegalArgumentException("not an encoded object of "
+                    + "kind " + (char) kind);
+        }
+        if (encoded[1] != VERSION) {
+            throw new IllegalArgumentException("unsupported version "
+                    + encoded[1] + " of kind " + (char) kind);
+        }
+        position = 2;
+    }
+
+    /** Returns true iff STORED was written by Java serialization. */
+    static boolean isSerialized(byte[] stored) {
+        return stored.length > 0 && stored[0] == SERIALIZED;
+    }
+
+    /** Function that returns the encoding written so far.
+     * @return the bytes of the encoding.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, position);
+    }
+
+    /** Function that appends a number.
+     * @param value the number, which must not be negative.
+     */
+    void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            putByte((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        putByte((byte) value);
+    }
+
+    /** Function that reads a number.
+     * @return the number.
+     */
+    long getVarint() {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = getByte();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /** Function that appends a string.
+     * @param value the string, or null.
+     */
+    void putString(String value) {
+        if (value == null) {
+            putVarint(0);
+            return;
+        }
+        int length = value.length();
+        ensure(length + 1);
+        int start = position + 1;
+        for (int k = 0; k < length; k += 1) {
+            char c = value.charAt(k);
+            if (c >= 0x80) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                putVarint(utf8.length + 1L);
+                putBytes(utf8);
+                return;
+            }
+            bytes[start + k] = (byte) c;
+        }
+        if (length < 0x7F) {
+            bytes[position] = (byte) (length + 1);
+            position = start + length;
+        } else {
+            byte[] ascii = Arrays.copyOfRange(bytes, start, start + length);
+            putVarint(length + 1L);
+            putBytes(ascii);
+        }
+    }
+
+    /** Function that reads a string.
+     * @return the string, or null.
+     */
+    String getString() {
+        int length = (int) getVarint() - 1;
+        if (length < 0) {
+            return null;
+        }
+        check(length);
+        String result = new String(bytes, position, length,
+                StandardCharsets.UTF_8);
+        position += length;
+        return result;
+    }
+
+    /** Function that appends an id.
+     * @param id the id, in hexadecimal.
+     */
+    void putId(String id) {
+        if (id.length() != 2 * idLength) {
+            throw new IllegalArgumentException("not an id: " + id);
+        }
+        ensure(idLength);
+        for (int k = 0; k < idLength; k += 1) {
+            int hi = Character.digit(id.charAt(2 * k), 16);
+            int lo = Character.digit(id.charAt(2 * k + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw new IllegalArgumentException("not an id: " + id);
+            }
+            bytes[position + k] = (byte) (hi << 4 | lo);
+        }
+        position += idLength;
+    }
+
+    /** Function that reads an id.
+     * @return the id, in hexadecimal.
+     */
+    String getId() {
+        check(idLength);
+        char[] hex = new char[2 * idLength];
+        for (int k = 0; k < idLength; k += 1) {
+            byte b = bytes[position + k];
+            hex[2 * k] = HEX_DIGITS[(b >> 4) & 0xF];
+            hex[2 * k + 1] = HEX_DIGITS[b & 0xF];
+        }
+        position += idLength;
+        return new String(hex);
+    }
+
+    /** Function that appends a map from names to ids, sorted by name.
+     * @param map the map.
+     */
+    void putIdMap(Map<String, String> map) {
+        putVarint(map.size());
+        if (map instanceof TreeMap) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                putString(entry.getKey());
+                putId(entry.getValue());
+            }
+            return;
+        }
+        List<Map.Entry<String, String>> entries =
+            new ArrayList<>(map.entrySet());
+        entries.sort(Map.Entry.comparingByKey());
+        for (Map.Entry<String, String> entry : entries) {
+            putString(entry.getKey());
+            putId(entry.getValue());
+        }
+    }
+
+    /** Function that reads a map from names to ids into OUT.
+     * @param out the map receiving the entries.
+     * @return OUT.
+     */
+    <M extends Map<String, String>> M getIdMap(M out) {
+        long size = getVarint();
+        for (long k = 0; k < size; k += 1) {
+            String name = getString();
+            out.put(name, getId());
+        }
+        return out;
+    }
+
+    /** Function that appends one byte.
+     * @param b the byte.
+     */
+    private void putByte(byte b) {
+        ensure(1);
+        bytes[position] = b;
+        position += 1;
+    }
+
+    /** Function that appends bytes.
+     * @param data the bytes.
+     */
+    private void putBytes(byte[] data) {
+        ensure(data.length);
+        System.arraycopy(data, 0, bytes, position, data.length);
+        position += data.length;
+    }
+
+    /** Function that makes room for LENGTH more bytes. */
+    private void ensure(int length) {
+        if (length > bytes.length - position) {
+            bytes = Arrays.copyOf(bytes,
+                    Math.max(bytes.length * 2, position + length));
+        }
+    }
+
+    /** Function that reads one byte.
+     * @return the byte.
+     */
+    private byte getByte() {
+        check(1);
+        position += 1;
+        return bytes[position - 1];
+    }
+
+    /** Function that checks that LENGTH more bytes can be read. */
+    private void check(int length) {
+        if (length > bytes.length - position) {
+            throw new IllegalArgumentException("truncated encoding");
+        }
+    }
+
+    /** Kind of an encoded commit.*/
+    static final byte COMMIT = 'C';
+    /** Kind of an encoded tree.*/
+    static final byte TREE = 'T';
+    /** Kind of an encoded staging area.*/
+    static final byte STAGING = 'S';
+
+    /** Version of the formats written.*/
+    private static final byte VERSION = 1;
+    /** First byte of an object written by Java serialization.*/
+    private static final byte SERIALIZED = (byte) 0xAC;
+    /** The hexadecimal digits.*/
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** Initial size of the buffer of an encoder.*/
+    private static final int INITIAL_SIZE = 128;
+
+    /** Length of a binary id in the repository.*/
+    private final int idLength = Utils.idBytes();
+    /** The bytes written, or being read.*/
+    private byte[] bytes;
+    /** Number of bytes written, or position of the next byte to read.*/
+    private int position;
+}
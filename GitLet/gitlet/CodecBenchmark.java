@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.util.Random;
+
+/** A benchmark whose main program may be invoked as follows:
+ *      java gitlet.CodecBenchmark [FILES [ROUNDS]]
+ *  It times the encoding (see Codec) of a commit and of staging areas of
+ *  up to FILES files (default 100000) against Java serialization, which
+ *  was used before, repeating each ROUNDS times (default 20, after as
+ *  many rounds of warm-up) and printing the sizes of both forms and the
+ *  average time to write and to read each.
+ *  @author Hiva Mohammadzadeh
+ */
+public class CodecBenchmark {
+
+    /** Run the benchmark; ARGS may give the largest number of staged
+     *  files and the number of rounds. */
+    public static void main(String... args) {
+        int maxFiles = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Random random = new Random(61);
+        System.out.printf("%-16s %10s %10s %12s %12s %12s %12s%n", "object",
+                "ser (B)", "enc (B)", "ser w (us)", "enc w (us)",
+                "ser r (us)", "enc r (us)");
+        Commit commit = new Commit();
+        commit.setTheMessage("A commit message of ordinary length");
+        commit.setTimeStamp("Sat Oct 17 22:10:44 2026 +0000");
+        commit.setParentRef(randomID(random));
+        commit.setTreeRef(randomID(random));
+        report("commit", commit::encode, () -> Utils.serialize(commit),
+            Commit::decode, bytes -> Utils.deserialize(bytes, Commit.class),
+            rounds);
+        for (int files = 10; files <= maxFiles; files *= 10) {
+            Staging stage = new Staging();
+            for (int k = 0; k < files; k += 1) {
+                stage.addBlobs("dir" + k % 97 + "/file" + k + ".txt",
+                        randomID(random));
+            }
+            report("stage " + files, stage::encode,
+                () -> Utils.serialize(stage), Staging::decode,
+                bytes -> Utils.deserialize(bytes, Staging.class), rounds);
+        }
+    }
+
+    /** Time writing and reading one object both ways over ROUNDS rounds
+     *  and print one row: ENCODE and SERIALIZE write it, DECODE and
+     *  DESERIALIZE read it back. */
+    private static void report(String name, Writer encode, Writer serialize,
+                               Reader decode, Reader deserialize,
+                               int rounds) {
+        byte[] encoded = encode.write(), serialized = serialize.write();
+        time(encode, rounds);
+        time(serialize, rounds);
+        double encodeTime = time(encode, rounds);
+        double serializeTime = time(serialize, rounds);
+        Writer decodeAll = () -> {
+            decode.read(encoded);
+            return encoded;
+        };
+        Writer deserializeAll = () -> {
+            deserialize.read(serialized);
+            return serialized;
+        };
+        time(decodeAll, rounds);
+        time(deserializeAll, rounds);
+        double decodeTime = time(decodeAll, rounds);
+        double deserializeTime = time(deserializeAll, rounds);
+        System.out.printf("%-16s %10d %10d %12.1f %12.1f %12.1f %12.1f%n",
+                name, serialized.length, encoded.length, serializeTime,
+                encodeTime, deserializeTime, decodeTime);
+    }
+
+    /** Return the average time in microseconds of ROUNDS runs of
+     *  WRITER. */
+    private static double time(Writer writer, int rounds) {
+        long start = System.nanoTime();
+        int sink = 0;
+        for (int k = 0; k < rounds; k += 1) {
+            sink += writer.write().length;
+        }
+        if (sink < 0) {
+            throw new IllegalStateException();
+        }
+        return (System.nanoTime() - start) / 1e3 / rounds;
+    }
+
+    /** Return a random id generated with RANDOM. */
+    private static String randomID(Random random) {
+        byte[] id = new byte[Utils.idBytes()];
+        random.nextBytes(id);
+        return Utils.toHex(id);
+    }
+
+    /** Something that writes an object. */
+    private interface Writer {
+        /** Return the bytes written. */
+        byte[] write();
+    }
+
+    /** Something that reads an object. */
+    private interface Reader {
+        /** Read an object from BYTES. */
+        Object read(byte[] bytes);
+    }
+}
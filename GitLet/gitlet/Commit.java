@@ -1,9 +1,11 @@
 package gitlet;
 
 import java.io.Serializable;
-import java.io.File;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 
 /** This class handles the commits of the program,
  * and implements methods to set up commits.
@@ -12,19 +14,42 @@ import java.util.HashMap;
 
 public class Commit implements Serializable {
 
-    /** Commit Constructor: creates a new commit with a new hash map
-     * for the blobs of this commit.
+    /** Commit Constructor: creates a new commit, whose files are set
+     * with setTreeRef.
      */
     public Commit() {
-        blobMapRef = new HashMap<>();
     }
 
-    public Map<String, Blob> getBlobRef() {
-        return blobMapRef;
+    /** Function that returns the files of this commit. They are listed
+     * from the commit's trees the first time they are asked for.
+     * @return map from file path to blob id.
+     */
+    public synchronized Map<String, String> getBlobRef() {
+        if (blobMapRef != null) {
+            return blobMapRef;
+        }
+        if (files == null) {
+            files = Tree.flatten(treeRef);
+        }
+        return files;
+    }
+
+    /** Function that returns the id of the root tree of this commit.
+     * A commit from before trees existed has its trees made from its map
+     * of files.
+     * @return the tree id.
+     */
+    public synchronized String getTreeRef() {
+        if (treeRef == null) {
+            treeRef = Tree.build(blobMapRef);
+        }
+        return treeRef;
     }
 
-    public void setBlobRef(Map<String, Blob> itsBlobMapRef) {
-        blobMapRef = itsBlobMapRef;
+    public void setTreeRef(String itsTreeRef) {
+        treeRef = itsTreeRef;
+        blobMapRef = null;
+        files = null;
     }
 
     public String getTheMessage() {
@@ -51,27 +76,132 @@ public class Commit implements Serializable {
         parentRef = itsParentRef;
     }
 
+    public String getSecondParentRef() {
+        return secondParentRef;
+    }
+
+    public void setSecondParentRef(String itsSecondParentRef) {
+        secondParentRef = itsSecondParentRef;
+    }
+
+    /** Function that returns the ids of the parents of this commit.
+     * @return the parent ids, empty for the initial commit, two for
+     * a merge commit.
+     */
+    public List<String> getParents() {
+        List<String> parents = new ArrayList<>(2);
+        if (parentRef != null) {
+            parents.add(parentRef);
+        }
+        if (secondParentRef != null) {
+            parents.add(secondParentRef);
+        }
+        return parents;
+    }
+
+    /** Function that returns the time of this commit.
+     * @return the time stamp in seconds since the epoch, or 0 if it
+     * cannot be parsed.
+     */
+    public long getTime() {
+        try {
+            return new SimpleDateFormat(DATE_FORMAT).parse(timeStamp)
+                .getTime() / 1000;
+        } catch (ParseException excp) {
+            return 0;
+        }
+    }
+
     /** Function that is used to get the commit object with the given commitID.
-     * Used in log and commit.
+     * Used in log and commit. Commits are read lazily and the recently
+     * used ones are kept in a bounded cache.
      * @param commitID String representing the Id of the commit.
      * @return The object that was read.
      */
     public static Commit getCommit(String commitID) {
-        File file = Utils.join(Gitlet.COMMITS_DIRECTORY, commitID);
-        return Utils.readObject(file, Commit.class);
+        return CACHE.get(commitID);
+    }
+
+    /** Function that returns the cache commits are read through, e.g. to
+     * report its hit and miss counters.
+     * @return the commit cache.
+     */
+    static CommitCache getCache() {
+        return CACHE;
     }
 
     /** Function that creates a commit Id for the new commit,
-     * and writes new commit object to Commit directory.
+     * and writes new commit object to the commit store. A commit that is
+     * already stored (made again within the same second) is not added
+     * to the side indexes a second time.
      * @return commitID The id of the created blob object.
      */
     public String saveTheCurrentCommit() {
-        String commitID = Utils.sha1(Utils.serialize(this));
-        File newCommit = Utils.join(Gitlet.COMMITS_DIRECTORY, commitID);
-        Utils.writeObject(newCommit, this);
+        byte[] contents = encode();
+        String commitID = Utils.hash(contents);
+        if (Gitlet.commits.has(commitID)) {
+            return commitID;
+        }
+        Gitlet.commits.put(commitID, contents);
+        CACHE.put(commitID, this, contents.length);
+        CommitGraph.add(commitID, this);
+        IdIndex.add(commitID);
+        MessageIndex.add(commitID, message);
+        SummaryLog.add(commitID, this);
         return commitID;
     }
 
+    /** Function that encodes this commit (see Codec): its time stamp,
+     * message, parents and root tree.
+     * @return the encoding.
+     */
+    byte[] encode() {
+        Codec out = new Codec(Codec.COMMIT);
+        out.putString(timeStamp);
+        out.putString(message);
+        List<String> parents = getParents();
+        out.putVarint(parents.size());
+        for (String parent : parents) {
+            out.putId(parent);
+        }
+        out.putId(getTreeRef());
+        return out.toByteArray();
+    }
+
+    /** Function that decodes a stored commit, encoded or, if it was
+     * written by an older version, serialized.
+     * @param stored the stored bytes.
+     * @return the commit.
+     */
+    static Commit decode(byte[] stored) {
+        if (Codec.isSerialized(stored)) {
+            return Utils.deserialize(stored, Commit.class);
+        }
+        Codec in = new Codec(stored, Codec.COMMIT);
+        Commit result = new Commit();
+        result.timeStamp = in.getString();
+        result.message = in.getString();
+        long parents = in.getVarint();
+        if (parents > 0) {
+            result.parentRef = in.getId();
+        }
+        if (parents > 1) {
+            result.secondParentRef = in.getId();
+        }
+        result.treeRef = in.getId();
+        return result;
+    }
+
+    /** Format of the time stamps of commits.*/
+    static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+
+    /** Cache of the commits read (or written) by this process.*/
+    private static final CommitCache CACHE = CommitCache.fromProperties();
+
+    /** Pinned so that commits written by Java serialization
+     * remain readable.*/
+    private static final long serialVersionUID = 8955559936670619504L;
+
     /** FIELDS:
      * String to track the Commit time.*/
     private String timeStamp;
@@ -79,9 +209,16 @@ public class Commit implements Serializable {
     private String message;
     /** String holding the SHA-1 reference to parent commit.*/
     private String parentRef;
+    /** String holding the SHA-1 reference to the merged-in parent of a
+     * merge commit, or null.*/
+    private String secondParentRef;
+    /** String holding the SHA-1 id of the commit's root tree.*/
+    private String treeRef;
     /** Map holding the file (blob) reference of the files in the
-     * commit where key: user file name, value: blob object.*/
-    private Map<String, Blob> blobMapRef;
-
-
+     * commit where key: user file name, value: SHA-1 id of the blob.
+     * Only kept by commits made before trees; newer commits hold only
+     * their tree id, so that a commit stays small.*/
+    private Map<String, String> blobMapRef;
+    /** The files of the commit, listed from its trees when first needed.*/
+    private transient Map<String, String> files;
 }
@@ -0,0 +1,179 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** This class loads commits from the Commit directory lazily and keeps
+ * the most recently used ones in a size-bounded LRU cache, so that walking
+ * a long history (log, split point searches) neither keeps every commit in
+ * memory nor deserializes the same commit twice.
+ * The cache is bounded by a number of entries and by an estimate of the
+ * bytes it holds (the size of the commit files it read), whichever is hit
+ * first. It may be used by several threads at once.
+ *  @author Hiva Mohammadzadeh
+ */
+
+public class CommitCache {
+
+    /** Default maximum number of cached commits.*/
+    static final int DEFAULT_MAX_ENTRIES = 4096;
+    /** Default maximum number of bytes of cached commits.*/
+    static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+    /** CommitCache Constructor: creates an empty cache holding at most
+     * MAXENTRIES commits and at most MAXBYTES bytes worth of commits.
+     * @param maxEntries the maximum number of cached commits.
+     * @param maxBytes the maximum total size of the cached commits.
+     */
+    public CommitCache(int maxEntries, long maxBytes) {
+        if (maxEntries < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("cache bounds must be positive");
+        }
+        entryLimit = maxEntries;
+        byteLimit = maxBytes;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Function that creates a cache whose bounds are taken from the
+     * system properties gitlet.commitCache.entries and
+     * gitlet.commitCache.bytes, falling back to the defaults.
+     * @return the new cache.
+     */
+    public static CommitCache fromProperties() {
+        int maxEntries = Integer.getInteger("gitlet.commitCache.entries",
+                DEFAULT_MAX_ENTRIES);
+        long maxBytes = Long.getLong("gitlet.commitCache.bytes",
+                DEFAULT_MAX_BYTES);
+        return new CommitCache(maxEntries, maxBytes);
+    }
+
+    /** Function that returns the commit with the given id, reading it from
+     * the Commit directory only if it is not already cached.
+     * @param commitID String representing the Id of the commit.
+     * @return The commit.
+     */
+    public Commit get(String commitID) {
+        synchronized (this) {
+            Entry cached = entries.get(commitID);
+            if (cached != null) {
+                hits += 1;
+                return cached.commit;
+            }
+            misses += 1;
+        }
+        byte[] stored = readStored(commitID);
+        Commit commit = Commit.decode(stored);
+        put(commitID, commit, stored.length);
+        return commit;
+    }
+
+    /** Function that reads the stored bytes of the commit with the given
+     * id from the commit store (the Commit directory, or else the pack).
+     * @param commitID String representing the Id of the commit.
+     * @return the stored commit.
+     */
+    private static byte[] readStored(String commitID) {
+        byte[] result = Gitlet.commits.get(commitID);
+        if (result == null) {
+            throw new IllegalArgumentException("no such commit " + commitID);
+        }
+        return result;
+    }
+
+    /** Function that adds a commit that was just written, so that a
+     * following read does not have to go back to disk.
+     * @param commitID String representing the Id of the commit.
+     * @param commit The commit.
+     * @param size the number of bytes the commit takes on disk.
+     */
+    public synchronized void put(String commitID, Commit commit, long size) {
+        Entry old = entries.put(commitID, new Entry(commit, size));
+        if (old != null) {
+            bytes -= old.size;
+        }
+        bytes += size;
+        evict();
+    }
+
+    /** Function that drops least recently used entries until the cache is
+     * within its bounds. The most recent entry is always kept, even if it
+     * alone is larger than the byte bound.
+     */
+    private void evict() {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (entries.size() > 1
+                && (entries.size() > entryLimit || bytes > byteLimit)) {
+            Entry eldest = iter.next();
+            bytes -= eldest.size;
+            iter.remove();
+            evictions += 1;
+        }
+    }
+
+    /** Function that empties the cache. Counters are kept. */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /** Function that describes the cache counters in one line.
+     * @return the description.
+     */
+    public synchronized String stats() {
+        return String.format("commit cache: %d hits, %d misses, "
+                + "%d evictions, %d entries, %d bytes",
+                hits, misses, evictions, entries.size(), bytes);
+    }
+
+    /** A cached commit together with its size in bytes. */
+    private static class Entry {
+        /** Entry Constructor.
+         * @param itsCommit the cached commit.
+         * @param itsSize the size of the commit in bytes.
+         */
+        Entry(Commit itsCommit, long itsSize) {
+            commit = itsCommit;
+            size = itsSize;
+        }
+
+        /** The cached commit.*/
+        private final Commit commit;
+        /** The size of the commit in bytes.*/
+        private final long size;
+    }
+
+    /** Map from commit id to cached commit, in access order.*/
+    private final LinkedHashMap<String, Entry> entries;
+    /** Maximum number of cached commits.*/
+    private final int entryLimit;
+    /** Maximum number of bytes of cached commits.*/
+    private final long byteLimit;
+    /** Number of bytes of the currently cached commits.*/
+    private long bytes;
+    /** Number of lookups answered from the cache.*/
+    private long hits;
+    /** Number of lookups that had to read the Commit directory.*/
+    private long misses;
+    /** Number of commits dropped to stay within the bounds.*/
+    private long evictions;
+}
@@ -0,0 +1,386 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/** This class represents the commit graph: a side file that records,
+ * for every commit, the positions of its parents and its generation
+ * number (1 for a commit without parents, otherwise one more than the
+ * largest generation of its parents). It is memory-mapped, so that
+ * ancestry questions (is one commit an ancestor of another, where do two
+ * branches split) are answered without reading any Commit.
+ *
+ * The file (.gitlet/graph) is the magic "GRPH" and the size of a record,
+ * followed by one fixed-width record per commit: the binary id, the
+ * positions of the first and second parents (-1 if absent), the
+ * generation and the commit time in seconds. A commit's record always
+ * comes after those of its parents. A record is appended when a commit
+ * is made, and the graph in memory (with the position of each commit,
+ * once looked up) grows by that record rather than being read again.
+ * Appends are not synced, so a record cut short by a crash is cut off
+ * when the file is next mapped, and the commit is then missing from
+ * the graph. The file is rebuilt from the commits if it is missing or
+ * does not know a commit it is asked about.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class CommitGraph {
+
+    /** CommitGraph Constructor: the graph whose records are mapped in
+     * RECORDS.
+     * @param records the mapped graph file.
+     */
+    private CommitGraph(MappedByteBuffer records) {
+        idLength = Utils.idBytes();
+        recordSize = recordSize();
+        if (records.getInt(0) != MAGIC || records.getInt(4) != recordSize) {
+            throw new IllegalArgumentException("corrupted commit graph");
+        }
+        graph = records;
+        count = (records.capacity() - HEADER_SIZE) / recordSize;
+    }
+
+    /** Function that returns the repository's commit graph, mapping it
+     * the first time it is asked for and building it if needed.
+     * @return the commit graph.
+     */
+    static synchronized CommitGraph getGraph() {
+        if (current == null) {
+            if (!GRAPH_FILE.isFile()) {
+                rebuild();
+            }
+            current = new CommitGraph(map());
+        }
+        return current;
+    }
+
+    /** Function that maps the graph file, first cutting off the end of
+     * a record whose append was cut short, so that every record stays
+     * in its place.
+     * @return the mapped file, made of whole records.
+     */
+    private static MappedByteBuffer map() {
+        try (FileChannel channel = FileChannel.open(GRAPH_FILE.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long torn = Math.max(0, size - HEADER_SIZE) % recordSize();
+            if (torn != 0) {
+                channel.truncate(size - torn);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    size - torn);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that returns a commit graph that knows all of the given
+     * commits, rebuilding the graph once if the current one does not.
+     * @param ids the ids of existing commits.
+     * @return the commit graph.
+     */
+    private static CommitGraph getGraph(String... ids) {
+        CommitGraph result = getGraph();
+        for (String id : ids) {
+            if (result.indexOf(id) < 0) {
+                rebuild();
+                return getGraph();
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return count;
+    }
+
+    /** Returns the position of the commit named ID, or -1 if the graph
+     *  does not know it. */
+    synchronized int indexOf(String id) {
+        if (positions == null) {
+            positions = new HashMap<>(2 * count);
+            for (int k = 0; k < count; k += 1) {
+                positions.put(id(k), k);
+            }
+        }
+        Integer result = positions.get(id);
+        return result == null ? -1 : result;
+    }
+
+    /** Returns the id of the commit at position INDEX. */
+    String id(int index) {
+        byte[] id = new byte[idLength];
+        graph.get(HEADER_SIZE + index * recordSize, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the position of parent WHICH (0 or 1) of the commit at
+     *  position INDEX, or -1 if it has no such parent. */
+    int parent(int index, int which) {
+        return graph.getInt(HEADER_SIZE + index * recordSize + idLength
+                + 4 * which);
+    }
+
+    /** Returns the generation of the commit at position INDEX. */
+    int generation(int index) {
+        return graph.getInt(HEADER_SIZE + index * recordSize + idLength
+                + 8);
+    }
+
+    /** Returns the time, in seconds, of the commit at position INDEX. */
+    long time(int index) {
+        return graph.getLong(HEADER_SIZE + index * recordSize + idLength
+                + 12);
+    }
+
+    /** Function that tells whether one commit is an ancestor of (or the
+     * same as) another. The search from the descendant never goes below
+     * the generation of the ancestor, since no commit there can reach it.
+     * @param ancestorID the id of the possible ancestor.
+     * @param descendantID the id of the possible descendant.
+     * @return true iff ancestorID is reachable from descendantID.
+     */
+    static boolean isAncestor(String ancestorID, String descendantID) {
+        CommitGraph graph = getGraph(ancestorID, descendantID);
+        int target = graph.indexOf(ancestorID);
+        int floor = graph.generation(target);
+        BitSet seen = new BitSet(graph.count);
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(graph.indexOf(descendantID));
+        while (!stack.isEmpty()) {
+            int k = stack.pop();
+            if (k == target) {
+                return true;
+            }
+            if (seen.get(k) || graph.generation(k) <= floor) {
+                continue;
+            }
+            seen.set(k);
+            for (int which = 0; which < 2; which += 1) {
+                int p = graph.parent(k, which);
+                if (p >= 0) {
+                    stack.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Function that finds the split point of two commits: a latest
+     * common ancestor. The ancestors of both commits are visited together,
+     * highest generation first, each marked with the side(s) it was
+     * reached from. A commit is only visited once all of its children
+     * have been, so the first one marked from both sides is a common
+     * ancestor that no other common ancestor descends from, and the
+     * search never goes below its generation.
+     * @param firstID the id of one commit.
+     * @param secondID the id of the other commit.
+     * @return the id of the split point, or null if there is none.
+     */
+    static String mergeBase(String firstID, String secondID) {
+        CommitGraph graph = getGraph(firstID, secondID);
+        byte[] sides = new byte[graph.count];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (a, b) -> graph.generation(b) - graph.generation(a));
+        int first = graph.indexOf(firstID), second = graph.indexOf(secondID);
+        sides[first] |= FIRST;
+        sides[second] |= SECOND;
+        queue.add(first);
+        if (second != first) {
+            queue.add(second);
+        }
+        while (!queue.isEmpty()) {
+            int k = queue.remove();
+            if (sides[k] == (FIRST | SECOND)) {
+                return graph.id(k);
+            }
+            for (int which = 0; which < 2; which += 1) {
+                int p = graph.parent(k, which);
+                if (p >= 0 && (sides[p] | sides[k]) != sides[p]) {
+                    if (sides[p] == 0) {
+                        queue.add(p);
+                    }
+                    sides[p] |= sides[k];
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Function that appends the record of a new commit to the graph,
+     * and maps the grown file, keeping the positions already known.
+     * If the graph does not exist yet or does not know the commit's
+     * parents, it is rebuilt instead.
+     * @param commitID the id of the new commit.
+     * @param commit the new commit, already saved.
+     */
+    static synchronized void add(String commitID, Commit commit) {
+        if (!GRAPH_FILE.isFile()) {
+            rebuild();
+            return;
+        }
+        CommitGraph graph = getGraph();
+        if (graph.indexOf(commitID) >= 0) {
+            return;
+        }
+        List<String> parents = commit.getParents();
+        int[] parentIndex = {-1, -1};
+        int generation = 1;
+        for (int which = 0; which < parents.size(); which += 1) {
+            parentIndex[which] = graph.indexOf(parents.get(which));
+            if (parentIndex[which] < 0) {
+                rebuild();
+                return;
+            }
+            generation = Math.max(generation,
+                    graph.generation(parentIndex[which]) + 1);
+        }
+        ByteBuffer record = ByteBuffer.allocate(recordSize());
+        putRecord(record, commitID, parentIndex, generation, commit.getTime());
+        record.flip();
+        try (FileChannel out = FileChannel.open(GRAPH_FILE.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                out.write(record);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        CommitGraph grown = new CommitGraph(map());
+        grown.positions = graph.positions;
+        if (grown.positions != null) {
+            grown.positions.put(commitID, graph.count);
+        }
+        current = grown;
+    }
+
+    /** Function that writes the graph file anew from all the commits in
+     * the repository, each after its parents. This is the only time
+     * commits are read for the graph.
+     */
+    static synchronized void rebuild() {
+        Map<String, Commit> commits = new HashMap<>();
+        for (String id : Gitlet.allCommitIDs()) {
+            commits.put(id, Commit.getCommit(id));
+        }
+        Map<String, Integer> placed = new HashMap<>();
+        int[] generations = new int[commits.size()];
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE
+                + commits.size() * recordSize());
+        records.putInt(MAGIC).putInt(recordSize());
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        for (String start : commits.keySet()) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (placed.containsKey(id)) {
+                    stack.pop();
+                    continue;
+                }
+                List<String> parents = commits.get(id).getParents();
+                int[] parentIndex = {-1, -1};
+                int generation = 1;
+                boolean ready = true;
+                for (int which = 0; which < parents.size(); which += 1) {
+                    Integer p = placed.get(parents.get(which));
+                    if (!commits.containsKey(parents.get(which))) {
+                        continue;
+                    } else if (p == null) {
+                        stack.push(parents.get(which));
+                        ready = false;
+                    } else {
+                        parentIndex[which] = p;
+                        generation = Math.max(generation,
+                                generations[p] + 1);
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    int index = placed.size();
+                    placed.put(id, index);
+                    generations[index] = generation;
+                    putRecord(records, id, parentIndex, generation,
+                            commits.get(id).getTime());
+                }
+            }
+        }
+        records.flip();
+        File temp = Blob.newTempFile();
+        try (FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.WRITE)) {
+            while (records.hasRemaining()) {
+                out.write(records);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(temp.toPath(), GRAPH_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        current = null;
+    }
+
+    /** Returns the size of a record: id, two parents, generation and
+     *  time. */
+    private static int recordSize() {
+        return Utils.idBytes() + 4 + 4 + 4 + 8;
+    }
+
+    /** Function that puts one record into OUT.
+     * @param out the buffer receiving the record.
+     * @param id the id of the commit.
+     * @param parents the positions of its two parents, or -1.
+     * @param generation its generation.
+     * @param time its time, in seconds.
+     */
+    private static void putRecord(ByteBuffer out, String id, int[] parents,
+                                  int generation, long time) {
+        out.put(Pack.fromHex(id));
+        out.putInt(parents[0]).putInt(parents[1]);
+        out.putInt(generation).putLong(time);
+    }
+
+    /** The commit graph file.*/
+    static final File GRAPH_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "graph");
+
+    /** Magic number at the start of the graph ("GRPH").*/
+    private static final int MAGIC = 0x47525048;
+    /** Size of the header, in bytes.*/
+    private static final int HEADER_SIZE = 8;
+
+    /** Marks of the commits reached from the first and the second commit
+     * by mergeBase.*/
+    private static final byte FIRST = 1, SECOND = 2;
+
+    /** The repository's commit graph, once mapped.*/
+    private static CommitGraph current;
+
+    /** Length of a binary commit id.*/
+    private final int idLength;
+    /** Size of a record.*/
+    private final int recordSize;
+    /** The mapped graph file.*/
+    private final MappedByteBuffer graph;
+    /** Number of commits in the graph.*/
+    private final int count;
+    /** Position of each commit, built when first needed.*/
+    private Map<String, Integer> positions;
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/** This class holds the repository-wide settings, kept in .gitlet/config
+ * as a properties file. Only the keys listed in DEFAULTS may be set.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Config {
+
+    /** Function that returns the value of the given setting.
+     * @param key the name of the setting.
+     * @return its value, or its default if it was never set.
+     */
+    static String get(String key) {
+        return load().getProperty(key, DEFAULTS.get(key));
+    }
+
+    /** Function that returns the value of the given setting as a boolean.
+     * @param key the name of the setting.
+     * @return its value.
+     */
+    static boolean getBoolean(String key) {
+        return Boolean.parseBoolean(get(key));
+    }
+
+    /** Function that returns the value of the given setting as an int.
+     * @param key the name of the setting.
+     * @return its value.
+     */
+    static int getInt(String key) {
+        try {
+            return Integer.parseInt(get(key));
+        } catch (NumberFormatException excp) {
+            return Integer.parseInt(DEFAULTS.get(key));
+        }
+    }
+
+    /** Function that returns true iff KEY is a known setting.
+     * @param key the name of the setting.
+     * @return whether the setting exists.
+     */
+    static boolean isKey(String key) {
+        return DEFAULTS.containsKey(key);
+    }
+
+    /** Function that sets the given setting and saves the configuration
+     * through the journal (see Journal).
+     * @param key the name of the setting.
+     * @param value its new value.
+     */
+    static synchronized void set(String key, String value) {
+        Properties props = load();
+        props.setProperty(key, value);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            props.store(out, "gitlet repository configuration");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.write(CONFIG_FILE, out.toByteArray());
+    }
+
+    /** Function that reads the configuration file the first time it is
+     * needed, including the changes not yet committed to it (see
+     * Journal).
+     * @return the settings that were set explicitly.
+     */
+    private static synchronized Properties load() {
+        if (settings == null) {
+            settings = new Properties();
+            byte[] stored = Journal.read(CONFIG_FILE);
+            if (stored != null) {
+                try {
+                    settings.load(new ByteArrayInputStream(stored));
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp.getMessage());
+                }
+            }
+        }
+        return settings;
+    }
+
+    /** Function that forgets the settings read, so that they are read
+     * again, as the journal has them, when next needed. Used when a
+     * command that may have set some fails.
+     */
+    static synchronized void forget() {
+        settings = null;
+    }
+
+    /** The hash objects are named with, sha1 or sha256. It is chosen by
+     * init and cannot be changed afterwards.*/
+    static final String HASH = "hash";
+    /** Whether new versions of a file are stored as deltas.*/
+    static final String DELTA = "delta";
+    /** The longest chain of deltas a blob may be stored as.*/
+    static final String DELTA_DEPTH = "delta.depth";
+    /** How many days gc keeps the commits branches pointed to recently.*/
+    static final String GC_GRACE_DAYS = "gc.graceDays";
+
+    /** The known settings and their default values.*/
+    static final TreeMap<String, String> DEFAULTS = new TreeMap<>();
+    static {
+        DEFAULTS.put(HASH, "sha1");
+        DEFAULTS.put(DELTA, "false");
+        DEFAULTS.put(DELTA_DEPTH, "10");
+        DEFAULTS.put(GC_GRACE_DAYS, "14");
+    }
+
+    /** The configuration file.*/
+    static final File CONFIG_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "config");
+
+    /** The settings read from the configuration file, once loaded.*/
+    private static Properties settings;
+}
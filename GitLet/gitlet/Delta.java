@@ -0,0 +1,147 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** This class encodes and applies deltas: the edit script, computed
+ * with Diff, that turns the contents of a base blob into the contents
+ * of a newer version of the same file.
+ * Contents are split into lines that keep their terminating newline and
+ * are decoded as ISO-8859-1, so that any byte sequence (including one
+ * without a final newline) is reconstructed exactly.
+ *
+ * An encoded delta is the id of the base blob, the length of the delta
+ * chain it ends (1 if the base is stored whole), the number of edits,
+ * and for each edit the first line and number of lines of the base it
+ * replaces followed by the replacing lines.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Delta {
+
+    /** Function that returns the lines of CONTENT, each one including its
+     * terminating newline (the last one may have none).
+     * @param content the contents of a file.
+     * @return the list of lines.
+     */
+    static List<String> lines(byte[] content) {
+        String text = new String(content, StandardCharsets.ISO_8859_1);
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end == -1 ? text.length() : end + 1;
+            result.add(text.substring(start, end));
+            start = end;
+        }
+        return result;
+    }
+
+    /** Function that returns the delta turning BASE into TARGET.
+     * @param baseID the id of the base blob.
+     * @param depth the length of the delta chain the result ends.
+     * @param base the contents of the base blob.
+     * @param target the contents to encode.
+     * @return the encoded delta.
+     */
+    static byte[] encode(String baseID, int depth, byte[] base,
+                         byte[] target) {
+        List<String> baseLines = lines(base);
+        List<String> targetLines = lines(target);
+        Diff diff = new Diff();
+        diff.setSequences(baseLines, targetLines);
+        diff.setAnchored(baseLines.size() + targetLines.size()
+                         >= ANCHORED_LINES);
+        int[] edits = diff.diffs();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(baseID);
+            out.writeInt(depth);
+            out.writeInt(edits.length / 4);
+            for (int k = 0; k < edits.length; k += 4) {
+                out.writeInt(edits[k]);
+                out.writeInt(edits[k + 1]);
+                out.writeInt(edits[k + 3]);
+                for (int i = 0; i < edits[k + 3]; i += 1) {
+                    byte[] line = targetLines.get(edits[k + 2] + i)
+                        .getBytes(StandardCharsets.ISO_8859_1);
+                    out.writeInt(line.length);
+                    out.write(line);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Function that reads the header of an encoded delta: the id of its
+     * base and its depth.
+     * @param in the encoded delta, positioned at its start.
+     * @return the base id and the depth.
+     */
+    static Header readHeader(DataInputStream in) throws IOException {
+        String baseID = in.readUTF();
+        int depth = in.readInt();
+        return new Header(baseID, depth);
+    }
+
+    /** Function that applies the edits of an encoded delta, whose header
+     * has already been read, to BASE.
+     * @param base the contents of the base blob.
+     * @param in the rest of the encoded delta.
+     * @return the reconstructed contents.
+     */
+    static byte[] apply(byte[] base, DataInputStream in) throws IOException {
+        List<String> baseLines = lines(base);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int edits = in.readInt();
+        int next = 0;
+        for (int k = 0; k < edits; k += 1) {
+            int start = in.readInt();
+            int deleted = in.readInt();
+            int added = in.readInt();
+            for (; next < start; next += 1) {
+                result.write(baseLines.get(next)
+                        .getBytes(StandardCharsets.ISO_8859_1));
+            }
+            next += deleted;
+            for (int i = 0; i < added; i += 1) {
+                byte[] line = new byte[in.readInt()];
+                in.readFully(line);
+                result.write(line);
+            }
+        }
+        for (; next < baseLines.size(); next += 1) {
+            result.write(baseLines.get(next)
+                    .getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return result.toByteArray();
+    }
+
+    /** The number of lines from which deltas are computed with an
+     * anchored (parallel, not necessarily smallest) Diff.*/
+    private static final int ANCHORED_LINES = 20000;
+
+    /** The base and depth of a delta. */
+    static class Header {
+        /** Header Constructor.
+         * @param itsBase the id of the base blob.
+         * @param itsDepth the length of the delta chain.
+         */
+        Header(String itsBase, int itsDepth) {
+            baseID = itsBase;
+            depth = itsDepth;
+        }
+
+        /** The id of the base blob.*/
+        final String baseID;
+        /** The length of the delta chain ending with this delta.*/
+        final int depth;
+    }
+}
@@ -2,33 +2,57 @@ package gitlet;
 
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.stream.IntStream;
 
 import java.io.IOException;
 import java.nio.file.InvalidPathException;
 
-import static java.lang.Math.max;
-
 /** A comparison of two sequences of strings.  After executing setSequences to
  *  initialize the data, methods allow computing longest common sequences
  *  and differences in the form of edits needed to convert one sequence to the
- *  next.
+ *  next.  Lines are interned into int ids before they are compared, so the
+ *  inner loops compare ints rather than strings.
+ *  In anchored mode (see setAnchored), the sequences are first split at
+ *  lines that occur exactly once in each of them, and the pieces between
+ *  these anchors are compared independently, in parallel.
  *  @author P. N. Hilfinger */
 public class Diff {
 
+    /** Set whether the sequences are compared in anchored mode to
+     *  ANCHORED.  An anchored comparison pairs up the lines that occur
+     *  exactly once in both sequences (keeping the largest set of such
+     *  pairs that appear in the same order in both, as in "patience"
+     *  diff), and compares only the segments between these anchors, on
+     *  the common fork-join pool.  It is much faster on large files, but
+     *  the common subsequence it finds need not be a longest one. */
+    public void setAnchored(boolean anchored) {
+        if (anchored != _anchored) {
+            _anchored = anchored;
+            _lls = -1;
+            _common = null;
+        }
+    }
+
+    /** Return true iff the sequences are compared in anchored mode. */
+    public boolean isAnchored() {
+        return _anchored;
+    }
+
     /** Set the sequences currently being compared to the contents
      *  of SEQ1 and SEQ2 (as delivered by their iterators). */
     public void setSequences(Collection<String> seq1, Collection<String> seq2) {
         _lines1 = new ArrayList<>(seq1);
         _lines2 = new ArrayList<>(seq2);
-        _lls = null;
-        _todo = null;
+        _lls = -1;
+        _common = null;
+        _ids1 = _ids2 = null;
     }
 
     /** Set the sequences currently being compared to the contents
@@ -48,8 +72,9 @@ public class Diff {
                  excp) {
             _lines2 = Collections.emptyList();
         }
-        _lls = null;
-        _todo = null;
+        _lls = -1;
+        _common = null;
+        _ids1 = _ids2 = null;
     }
 
     /** Return the first of the current sequences. */
@@ -73,79 +98,44 @@ public class Diff {
     }
 
     /** Return the length of the longest subsequence of the first K1 and K2
-     *  items, respectively, of the current data sequences. */
+     *  items, respectively, of the current data sequences.  This runs
+     *  Myers' greedy algorithm on the two prefixes, taking time
+     *  O((K1 + K2) * D), where D is the number of lines in which they
+     *  differ, and O(K1 + K2) space. */
     public int lls(int k1, int k2) {
         checkData();
-        if (_lls == null) {
-            _lls = new int[_lines1.size() + 1][_lines2.size() + 1];
-            for (int[] row : _lls) {
-                Arrays.fill(row, -1);
-            }
-        }
-        if (k1 == 0 || k2 == 0
-            || k1 > _lines1.size() || k2 > _lines2.size()) {
+        k1 = Math.min(k1, _lines1.size());
+        k2 = Math.min(k2, _lines2.size());
+        if (k1 <= 0 || k2 <= 0) {
             return 0;
-        } else if (_lls[k1][k2] == -1) {
-            initStack();
-            push(k1, k2, 0);
-            while (!empty()) {
-                pop();
-                if (_llsTop1 == 0 || _llsTop2 == 0) {
-                    _lls[_llsTop1][_llsTop2] = 0;
-                } else if (_lls[_llsTop1][_llsTop2] != -1) {
-                    continue;
-                } else {
-                    switch (_llsState) {
-                    case 0:
-                        if (_lines1.get(_llsTop1 - 1)
-                            .equals(_lines2.get(_llsTop2 - 1))) {
-                            push(_llsTop1, _llsTop2, 4);
-                            push(_llsTop1 - 1, _llsTop2 - 1, 0);
-                        } else {
-                            push(_llsTop1, _llsTop2, 1);
-                        }
-                        continue;
-                    case 1:
-                        push(_llsTop1, _llsTop2, 2);
-                        push(_llsTop1, _llsTop2 - 1, 0);
-                        continue;
-                    case 2:
-                        push(_llsTop1, _llsTop2, 3);
-                        push(_llsTop1 - 1, _llsTop2, 0);
-                        continue;
-                    case 3:
-                        _lls[_llsTop1][_llsTop2]
-                            = max(_lls[_llsTop1][_llsTop2 - 1],
-                                  _lls[_llsTop1 - 1][_llsTop2]);
-                        continue;
-                    case 4:
-                        _lls[_llsTop1][_llsTop2]
-                            = _lls[_llsTop1 - 1][_llsTop2 - 1] + 1;
-                        continue;
-                    default:
-                        assert false;
-                    }
-                }
-            }
         }
-        return _lls[k1][k2];
+        if (k1 == _lines1.size() && k2 == _lines2.size() && !_anchored) {
+            return lls();
+        }
+        intern();
+        return (k1 + k2 - editDistance(_ids1, _ids2, k1, k2)) / 2;
     }
 
     /** Return the length of the longest common subsequence of the current
-     *  data subsequences. */
+     *  data subsequences (in anchored mode, of the common subsequence
+     *  found by commonSubsequence). */
     public int lls() {
         checkData();
-        return lls(_lines1.size(), _lines2.size());
+        if (_lls == -1) {
+            int[] common = commonSubsequence();
+            _lls = 0;
+            for (int k = 2; k < common.length; k += 3) {
+                _lls += common[k];
+            }
+        }
+        return _lls;
     }
 
     /** Return true iff the sequences currently being compared have identical
      *  content. */
     public boolean sequencesEqual() {
         checkData();
-        if (_lines1.size() != _lines2.size()) {
-            return false;
-        }
-        return lls(_lines1.size(), _lines2.size()) == _lines1.size();
+        return _lines1.equals(_lines2);
     }
 
     /** Return an array containing the int values of the items in LIST. */
@@ -164,32 +154,352 @@ public class Diff {
      *  a sequence of 3n values s01, s02, L0, s11, s12, L1,..., where
      *  si1 is the starting line position of the subsequence in the
      *  first file (0-based), si2 is the starting position in the second
-     *  file, and Li is the length of the subsequence. */
+     *  file, and Li is the length of the subsequence.  Uses the
+     *  linear-space refinement of Myers' O(ND) algorithm: each step finds
+     *  the middle of an optimal edit path and recurses on both halves,
+     *  so it takes O((N + M) * D) time and O(N + M) space, where N and M
+     *  are the lengths of the sequences and D the number of differing
+     *  lines.  In anchored mode, the result is a common subsequence
+     *  made of the anchors and of longest common subsequences of the
+     *  segments between them. */
     public int[] commonSubsequence() {
-        ArrayDeque<Integer> resultList = new ArrayDeque<>();
-
-        int k1, k2;
-        k1 = _lines1.size(); k2 = _lines2.size();
-        while (k1 > 0 && k2 > 0) {
-            int ls = lls(k1, k2);
-            if (lls(k1 - 1, k2) == ls) {
-                k1 -= 1;
-            } else if (lls(k1, k2 - 1) == ls) {
-                k2 -= 1;
+        checkData();
+        if (_common == null) {
+            intern();
+            int[] matches;
+            if (_anchored) {
+                matches = anchoredMatches();
             } else {
-                int L;
-                L = 1;
-                while (k1 > L && k2 > L && lls(k1 - L - 1, k2 - L) != ls - L
-                       && lls(k1 - L, k2 - L  - 1) != ls - L) {
-                    L += 1;
+                Myers myers = new Myers(_ids1, _ids2, 0, _ids1.length,
+                                        0, _ids2.length);
+                matches = myers.matches();
+            }
+            ArrayList<Integer> runs = new ArrayList<>();
+            for (int k = 0; k < matches.length; k += 2) {
+                int i = matches[k], j = matches[k + 1];
+                int last = runs.size() - 3;
+                if (last >= 0 && runs.get(last) + runs.get(last + 2) == i
+                    && runs.get(last + 1) + runs.get(last + 2) == j) {
+                    runs.set(last + 2, runs.get(last + 2) + 1);
+                } else {
+                    runs.add(i);
+                    runs.add(j);
+                    runs.add(1);
+                }
+            }
+            _common = toIntArr(runs);
+        }
+        return _common.clone();
+    }
+
+    /** Return the matched line pairs i0, j0, i1, j1, ... of the anchored
+     *  comparison of the current sequences, in increasing order. */
+    private int[] anchoredMatches() {
+        int n = _ids1.length, m = _ids2.length;
+        int[] count1 = new int[_numIds], count2 = new int[_numIds];
+        int[] where2 = new int[_numIds];
+        for (int id : _ids1) {
+            count1[id] += 1;
+        }
+        for (int j = 0; j < m; j += 1) {
+            count2[_ids2[j]] += 1;
+            where2[_ids2[j]] = j;
+        }
+        int[] cand1 = new int[Math.min(n, m)], cand2 = new int[cand1.length];
+        int numCand = 0;
+        for (int i = 0; i < n; i += 1) {
+            int id = _ids1[i];
+            if (count1[id] == 1 && count2[id] == 1) {
+                cand1[numCand] = i;
+                cand2[numCand] = where2[id];
+                numCand += 1;
+            }
+        }
+
+        int[] anchors = increasingRun(cand2, numCand);
+        int numSegments = anchors.length + 1;
+        int[] starts1 = new int[numSegments], ends1 = new int[numSegments];
+        int[] starts2 = new int[numSegments], ends2 = new int[numSegments];
+        int prev1 = -1, prev2 = -1;
+        for (int k = 0; k < numSegments; k += 1) {
+            starts1[k] = prev1 + 1;
+            starts2[k] = prev2 + 1;
+            if (k < anchors.length) {
+                prev1 = cand1[anchors[k]];
+                prev2 = cand2[anchors[k]];
+                ends1[k] = prev1;
+                ends2[k] = prev2;
+            } else {
+                ends1[k] = n;
+                ends2[k] = m;
+            }
+        }
+
+        IntStream segments = IntStream.range(0, numSegments);
+        if (n + m >= PARALLEL_THRESHOLD) {
+            segments = segments.parallel();
+        }
+        int[][] pieces = segments.mapToObj(k -> {
+            if (starts1[k] == ends1[k] || starts2[k] == ends2[k]) {
+                return NO_MATCHES;
+            }
+            return new Myers(_ids1, _ids2, starts1[k], ends1[k],
+                             starts2[k], ends2[k]).matches();
+        }).toArray(int[][]::new);
+
+        int total = 2 * anchors.length;
+        for (int[] piece : pieces) {
+            total += piece.length;
+        }
+        int[] result = new int[total];
+        int r = 0;
+        for (int k = 0; k < numSegments; k += 1) {
+            System.arraycopy(pieces[k], 0, result, r, pieces[k].length);
+            r += pieces[k].length;
+            if (k < anchors.length) {
+                result[r] = cand1[anchors[k]];
+                result[r + 1] = cand2[anchors[k]];
+                r += 2;
+            }
+        }
+        return result;
+    }
+
+    /** Return the positions, in increasing order, of a longest strictly
+     *  increasing subsequence of the first N values of VALS (patience
+     *  sorting, O(N lg N)). */
+    private static int[] increasingRun(int[] vals, int n) {
+        int[] tails = new int[n], prev = new int[n];
+        int len = 0;
+        for (int i = 0; i < n; i += 1) {
+            int lo = 0, hi = len;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (vals[tails[mid]] < vals[i]) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            prev[i] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = i;
+            if (lo == len) {
+                len += 1;
+            }
+        }
+        int[] result = new int[len];
+        for (int k = len - 1, i = len > 0 ? tails[len - 1] : -1; k >= 0;
+             k -= 1, i = prev[i]) {
+            result[k] = i;
+        }
+        return result;
+    }
+
+    /** Return the number of lines that must be deleted from or inserted
+     *  into the first K1 items of A to get the first K2 items of B
+     *  (Myers' greedy forward algorithm). */
+    private static int editDistance(int[] a, int[] b, int k1, int k2) {
+        int max = k1 + k2;
+        int[] v = new int[2 * max + 2];
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[max + k - 1] < v[max + k + 1])) {
+                    x = v[max + k + 1];
+                } else {
+                    x = v[max + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < k1 && y < k2 && a[x] == b[y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[max + k] = x;
+                if (x >= k1 && y >= k2) {
+                    return d;
                 }
-                resultList.offerFirst(L);
-                resultList.offerFirst(k2 - L);
-                resultList.offerFirst(k1 - L);
-                k1 -= L; k2 -= L;
             }
         }
-        return toIntArr(resultList);
+        return max;
+    }
+
+    /** Replace each line of the current sequences by an int, equal lines
+     *  getting equal ints, if that has not been done yet. */
+    private void intern() {
+        if (_ids1 != null) {
+            return;
+        }
+        HashMap<String, Integer> ids =
+            new HashMap<>(2 * (_lines1.size() + _lines2.size()) + 16);
+        _ids1 = internAll(_lines1, ids);
+        _ids2 = internAll(_lines2, ids);
+        _numIds = ids.size();
+    }
+
+    /** Return the ids of the items of LINES, adding new ones to IDS. */
+    private static int[] internAll(List<String> lines,
+                                   HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        int i = 0;
+        for (String line : lines) {
+            Integer id = ids.get(line);
+            if (id == null) {
+                id = ids.size();
+                ids.put(line, id);
+            }
+            result[i] = id;
+            i += 1;
+        }
+        return result;
+    }
+
+    /** The linear-space Myers search for a longest common subsequence of
+     *  ranges of two sequences of interned lines.  Each instance has its
+     *  own work arrays, so that several ranges can be compared at once. */
+    private static class Myers {
+
+        /** Find a longest common subsequence of A[A0 .. A1 - 1] and
+         *  B[B0 .. B1 - 1]. */
+        Myers(int[] a, int[] b, int a0, int a1, int b0, int b1) {
+            _a = a;
+            _b = b;
+            int max = (a1 - a0 + b1 - b0 + 1) / 2 + 1;
+            _forward = new int[2 * max + 2];
+            _backward = new int[2 * max + 2];
+            _pairs = new int[2 * Math.min(a1 - a0, b1 - b0) + 2];
+            lcs(a0, a1, b0, b1);
+            _forward = _backward = null;
+        }
+
+        /** Return the matched pairs i0, j0, i1, j1, ..., in increasing
+         *  order. */
+        int[] matches() {
+            return Arrays.copyOf(_pairs, 2 * _numPairs);
+        }
+
+        /** Record, in increasing order, the matched pairs of a longest
+         *  common subsequence of _a[A0 .. A1 - 1] and _b[B0 .. B1 - 1]. */
+        private void lcs(int a0, int a1, int b0, int b1) {
+            while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+                match(a0, b0);
+                a0 += 1;
+                b0 += 1;
+            }
+            int suffix;
+            suffix = 0;
+            while (a1 > a0 && b1 > b0 && _a[a1 - 1] == _b[b1 - 1]) {
+                a1 -= 1;
+                b1 -= 1;
+                suffix += 1;
+            }
+            if (a0 < a1 && b0 < b1) {
+                long split = middleSnake(a0, a1, b0, b1);
+                if (split >= 0) {
+                    int x = (int) (split >>> 32), y = (int) split;
+                    lcs(a0, a0 + x, b0, b0 + y);
+                    lcs(a0 + x, a1, b0 + y, b1);
+                }
+            }
+            for (int k = 0; k < suffix; k += 1) {
+                match(a1 + k, b1 + k);
+            }
+        }
+
+        /** Return a point (X, Y), packed as X << 32 | Y, relative to
+         *  (A0, B0), that lies on an optimal edit path between
+         *  _a[A0 .. A1 - 1] and _b[B0 .. B1 - 1], and splits it into two
+         *  paths with about as many edits each.  The search runs from both
+         *  ends at once and stops when the two meet.  Returns -1 if the
+         *  ranges have no item in common. */
+        private long middleSnake(int a0, int a1, int b0, int b1) {
+            int n = a1 - a0, m = b1 - b0;
+            int max = (n + m + 1) / 2;
+            int off = max, len = 2 * max + 2;
+            int[] vf = _forward, vb = _backward;
+            Arrays.fill(vf, 0, len, -1);
+            Arrays.fill(vb, 0, len, -1);
+            vf[off + 1] = 0;
+            vb[off + 1] = 0;
+            int delta = n - m;
+            boolean front = (delta & 1) != 0;
+            int fStart = 0, fEnd = 0, bStart = 0, bEnd = 0;
+            for (int d = 0; d < max; d += 1) {
+                for (int k = -d + fStart; k <= d - fEnd; k += 2) {
+                    int x;
+                    if (k == -d
+                        || (k != d && vf[off + k - 1] < vf[off + k + 1])) {
+                        x = vf[off + k + 1];
+                    } else {
+                        x = vf[off + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    vf[off + k] = x;
+                    if (x > n) {
+                        fEnd += 2;
+                    } else if (y > m) {
+                        fStart += 2;
+                    } else if (front) {
+                        int kb = off + delta - k;
+                        if (kb >= 0 && kb < len && vb[kb] != -1
+                            && x >= n - vb[kb]) {
+                            return (long) x << 32 | y;
+                        }
+                    }
+                }
+                for (int k = -d + bStart; k <= d - bEnd; k += 2) {
+                    int x;
+                    if (k == -d
+                        || (k != d && vb[off + k - 1] < vb[off + k + 1])) {
+                        x = vb[off + k + 1];
+                    } else {
+                        x = vb[off + k - 1] + 1;
+                    }
+                    int y = x - k;
+                    while (x < n && y < m
+                           && _a[a1 - x - 1] == _b[b1 - y - 1]) {
+                        x += 1;
+                        y += 1;
+                    }
+                    vb[off + k] = x;
+                    if (x > n) {
+                        bEnd += 2;
+                    } else if (y > m) {
+                        bStart += 2;
+                    } else if (!front) {
+                        int kf = off + delta - k;
+                        if (kf >= 0 && kf < len && vf[kf] != -1) {
+                            int xf = vf[kf];
+                            int yf = off + xf - kf;
+                            if (xf >= n - x) {
+                                return (long) xf << 32 | yf;
+                            }
+                        }
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /** Record that _a[I] is matched with _b[J]. */
+        private void match(int i, int j) {
+            _pairs[2 * _numPairs] = i;
+            _pairs[2 * _numPairs + 1] = j;
+            _numPairs += 1;
+        }
+
+        /** The sequences being compared. */
+        private final int[] _a, _b;
+        /** Furthest reaching paths of the forward and backward searches,
+         *  indexed by diagonal, used by middleSnake. */
+        private int[] _forward, _backward;
+        /** Matched pairs found so far. */
+        private int[] _pairs;
+        /** Number of pairs in _pairs. */
+        private int _numPairs;
     }
 
     /** Return the edit that converts the first of the sequences being compared
@@ -232,45 +542,25 @@ public class Diff {
         }
     }
 
-    /** Initialize work stack for lls. */
-    private void initStack() {
-        _todo = new int[6 * (_lines1.size() +  _lines2.size() + 1)];
-        _todop = 0;
-    }
-
-    /** Push an item on the work stack for computing lls(I1, I2). STATE
-     *  indicates which inner recursive calls have happened so far for these
-     *  arguments. */
-    private void push(int i1, int i2, int state) {
-        _todo[_todop + 1] = i1;
-        _todo[_todop + 2] = i2;
-        _todo[_todop] = state;
-        _todop += 3;
-    }
-
-    /** Pop an item from the work stack. */
-    private void pop() {
-        _todop -= 3;
-        _llsTop1 = _todo[_todop + 1]; _llsTop2 = _todo[_todop + 2];
-        _llsState = _todo[_todop];
-    }
-
-    /** Return true iff the work stack is empty. */
-    private boolean empty() {
-        return _todop <= 0;
-    }
-
     /** The sequences being compared. */
     private List<String> _lines1, _lines2;
 
-    /** The memo table for longest common subsequence.  _lls[a][b] contains the
-     *  length of the longest common sequence of the prefixes of the current
-     *  data sequences of lengths a and b, or -1 if not calculated. */
-    private int[][] _lls;
+    /** The cached result of commonSubsequence(), or null. */
+    private int[] _common;
+    /** The cached result of lls(), or -1. */
+    private int _lls = -1;
+
+    /** The interned sequences (equal lines have equal ids), or null. */
+    private int[] _ids1, _ids2;
+    /** The number of distinct lines in the two sequences. */
+    private int _numIds;
+    /** True iff comparing in anchored mode. */
+    private boolean _anchored;
 
-    /** A stack structure used by lls. */
-    private int[] _todo;
-    /** Structure for the work queue used by lls. */
-    private int _todop, _llsState, _llsTop1, _llsTop2;
+    /** Smallest total number of lines for which the segments of an
+     *  anchored comparison are compared in parallel. */
+    private static final int PARALLEL_THRESHOLD = 10000;
+    /** An empty list of matched pairs. */
+    private static final int[] NO_MATCHES = new int[0];
 
 }
@@ -0,0 +1,105 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** A benchmark whose main program may be invoked as follows:
+ *      java gitlet.DiffBenchmark [LINES [EDITS]]
+ *  For a range of file sizes up to LINES lines (default 50000), it makes
+ *  two files that differ in EDITS places (default 200) and times Diff
+ *  against the table-driven longest common subsequence that Diff used to
+ *  compute, which needs an (N+1) x (M+1) table of ints.  The table is
+ *  skipped when it would not fit in the available heap.  The anchored
+ *  column times Diff in anchored mode, which compares the pieces between
+ *  unique lines in parallel; its lls may be smaller.
+ *  @author Hiva Mohammadzadeh
+ */
+public class DiffBenchmark {
+
+    /** Run the benchmark; ARGS may give the largest number of lines and
+     *  the number of edits. */
+    public static void main(String... args) {
+        int maxLines = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int edits = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        Random random = new Random(61);
+        System.out.printf("%10s %8s %8s %14s %14s %14s %12s%n", "lines",
+                "edits", "lls", "Myers (ms)", "anchored (ms)", "table (ms)",
+                "table (MB)");
+        for (int lines = 1000; lines < maxLines; lines *= 2) {
+            report(lines, edits, random);
+        }
+        report(maxLines, edits, random);
+    }
+
+    /** Time both algorithms on two files of about LINES lines differing in
+     *  EDITS places, generated with RANDOM, and print one row. */
+    private static void report(int lines, int edits, Random random) {
+        List<String> first = new ArrayList<>();
+        for (int i = 0; i < lines; i += 1) {
+            first.add("line " + i + " " + random.nextInt(1000));
+        }
+        List<String> second = new ArrayList<>(first);
+        for (int k = 0; k < edits; k += 1) {
+            int at = random.nextInt(second.size());
+            switch (random.nextInt(3)) {
+            case 0:
+                second.remove(at);
+                break;
+            case 1:
+                second.add(at, "inserted " + k);
+                break;
+            default:
+                second.set(at, "changed " + k);
+                break;
+            }
+        }
+
+        long start = System.nanoTime();
+        Diff diff = new Diff();
+        diff.setSequences(first, second);
+        int lls = diff.lls();
+        diff.diffs();
+        double myers = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        diff = new Diff();
+        diff.setSequences(first, second);
+        diff.setAnchored(true);
+        diff.diffs();
+        double anchored = (System.nanoTime() - start) / 1e6;
+
+        long cells = (long) (first.size() + 1) * (second.size() + 1);
+        double megabytes = cells * 4 / 1e6;
+        String table;
+        if (cells * 4 > Runtime.getRuntime().maxMemory() / 2) {
+            table = "skipped";
+        } else {
+            start = System.nanoTime();
+            int expected = tableLls(first, second);
+            table = String.format("%.1f",
+                    (System.nanoTime() - start) / 1e6);
+            if (expected != lls) {
+                throw new IllegalStateException("results differ");
+            }
+        }
+        System.out.printf("%10d %8d %8d %14.1f %14.1f %14s %12.0f%n", lines,
+                edits, lls, myers, anchored, table, megabytes);
+    }
+
+    /** Return the length of the longest common subsequence of A and B
+     *  computed with a full table, as the old Diff did. */
+    private static int tableLls(List<String> a, List<String> b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i += 1) {
+            for (int j = 1; j <= b.size(); j += 1) {
+                if (a.get(i - 1).equals(b.get(j - 1))) {
+                    table[i][j] = table[i - 1][j - 1] + 1;
+                } else {
+                    table[i][j] = Math.max(table[i - 1][j], table[i][j - 1]);
+                }
+            }
+        }
+        return table[a.size()][b.size()];
+    }
+}
@@ -0,0 +1,275 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** This class represents a garbage collection: it finds the objects
+ * (commits, trees and blobs, loose or packed) that can no longer be
+ * reached and deletes them.
+ *
+ * Every stored object is given an index: its position in a sorted array
+ * of the binary ids of all objects, found by binary search. The mark
+ * phase then walks from the roots (the branch heads, the commits in the
+ * reflog's grace period and the staged blobs) through parents, trees,
+ * subtrees, blobs and delta bases, setting the bit of each object it
+ * reaches in a BitSet, so it takes a bit per object on top of the ids
+ * rather than a set of Strings. Trees and commits already marked are
+ * not walked again. The sweep deletes the loose objects whose bit is
+ * clear and, if some packed objects are unreachable too, repacks
+ * without them. The side indexes built from the commits are then
+ * rebuilt if a commit may have been deleted.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class GarbageCollector {
+
+    /** GarbageCollector Constructor: lists every stored object. The
+     * binary ids are written straight into one array as the stores give
+     * them, and then sorted and deduplicated in place.
+     */
+    private GarbageCollector() {
+        ByteArrayOutputStream all = new ByteArrayOutputStream();
+        for (ObjectStore store : stores()) {
+            store.forEachId(id -> all.write(Pack.fromHex(id), 0, idLength));
+        }
+        pack = Pack.getPack();
+        ids = all.toByteArray();
+        int total = ids.length / idLength;
+        sortIds(ids, total);
+        int n = 0;
+        for (int k = 0; k < total; k += 1) {
+            if (n == 0 || compareIds(ids, n - 1, k) != 0) {
+                System.arraycopy(ids, k * idLength, ids, n * idLength,
+                        idLength);
+                n += 1;
+            }
+        }
+        count = n;
+        marked = new BitSet(count);
+    }
+
+    /** Function that sorts the first N ids of IDS in place, by heapsort,
+     * so that no more memory is needed than for one id.
+     * @param ids the binary ids, back to back.
+     * @param n the number of ids to sort.
+     */
+    private void sortIds(byte[] ids, int n) {
+        byte[] temp = new byte[idLength];
+        for (int k = n / 2 - 1; k >= 0; k -= 1) {
+            siftDown(ids, k, n, temp);
+        }
+        for (int end = n - 1; end > 0; end -= 1) {
+            swapIds(ids, 0, end, temp);
+            siftDown(ids, 0, end, temp);
+        }
+    }
+
+    /** Function that moves the Kth id of IDS down the heap made of its
+     * first N ids until it is no smaller than its children.
+     * @param ids the binary ids, back to back.
+     * @param k the position of the id.
+     * @param n the size of the heap.
+     * @param temp room for one id.
+     */
+    private void siftDown(byte[] ids, int k, int n, byte[] temp) {
+        while (2 * k + 1 < n) {
+            int child = 2 * k + 1;
+            if (child + 1 < n && compareIds(ids, child + 1, child) > 0) {
+                child += 1;
+            }
+            if (compareIds(ids, k, child) >= 0) {
+                return;
+            }
+            swapIds(ids, k, child, temp);
+            k = child;
+        }
+    }
+
+    /** Returns the comparison of the Ith and Jth ids of IDS. */
+    private int compareIds(byte[] ids, int i, int j) {
+        return Arrays.compareUnsigned(ids, i * idLength, (i + 1) * idLength,
+                ids, j * idLength, (j + 1) * idLength);
+    }
+
+    /** Swaps the Ith and Jth ids of IDS, through TEMP. */
+    private void swapIds(byte[] ids, int i, int j, byte[] temp) {
+        System.arraycopy(ids, i * idLength, temp, 0, idLength);
+        System.arraycopy(ids, j * idLength, ids, i * idLength, idLength);
+        System.arraycopy(temp, 0, ids, j * idLength, idLength);
+    }
+
+    /** Function that collects the garbage of the repository.
+     * @param heads the ids of the commits at the heads of the branches.
+     * @param staged the ids of the blobs in the staging area.
+     * @return what was reclaimed: the number of objects and of bytes.
+     */
+    static long[] collect(List<String> heads, List<String> staged) {
+        long graceStart = System.currentTimeMillis() / 1000
+            - TimeUnit.DAYS.toSeconds(Config.getInt(Config.GC_GRACE_DAYS));
+        Reflog.expire(graceStart);
+        GarbageCollector gc = new GarbageCollector();
+        List<String> roots = new ArrayList<>(heads);
+        roots.addAll(Reflog.after(graceStart));
+        gc.markCommits(roots);
+        for (String blobID : staged) {
+            gc.markBlob(blobID);
+        }
+        return gc.sweep();
+    }
+
+    /** Function that marks the given commits and everything they reach.
+     * @param roots the ids of the commits.
+     */
+    private void markCommits(List<String> roots) {
+        ArrayDeque<String> commits = new ArrayDeque<>();
+        for (String root : roots) {
+            if (mark(root)) {
+                commits.push(root);
+            }
+        }
+        while (!commits.isEmpty()) {
+            Commit commit = Commit.getCommit(commits.pop());
+            for (String parent : commit.getParents()) {
+                if (mark(parent)) {
+                    commits.push(parent);
+                }
+            }
+            markTree(commit.getTreeRef());
+        }
+    }
+
+    /** Function that marks a tree and everything under it. A tree that
+     * is not stored (e.g. made just now for an old commit) is walked but
+     * has no bit to set.
+     * @param treeID the id of the tree.
+     */
+    private void markTree(String treeID) {
+        ArrayDeque<String> trees = new ArrayDeque<>();
+        if (mark(treeID) || indexOf(treeID) < 0) {
+            trees.push(treeID);
+        }
+        while (!trees.isEmpty()) {
+            Tree tree = Tree.getTree(trees.pop());
+            for (String subtreeID : tree.subtreeIDs()) {
+                if (mark(subtreeID) || indexOf(subtreeID) < 0) {
+                    trees.push(subtreeID);
+                }
+            }
+            for (String blobID : tree.blobIDs()) {
+                markBlob(blobID);
+            }
+        }
+    }
+
+    /** Function that marks a blob and the chain of blobs it is stored as
+     * a delta against.
+     * @param blobID the id of the blob.
+     */
+    private void markBlob(String blobID) {
+        while (blobID != null && mark(blobID)) {
+            blobID = Blob.deltaBase(blobID);
+        }
+    }
+
+    /** Function that sets the bit of an object.
+     * @param id the id of the object.
+     * @return true iff the object is stored and was not marked before.
+     */
+    private boolean mark(String id) {
+        int k = indexOf(id);
+        if (k < 0 || marked.get(k)) {
+            return false;
+        }
+        marked.set(k);
+        return true;
+    }
+
+    /** Function that deletes the objects that were not marked. The
+     * journal is checkpointed first, so that replaying it cannot bring
+     * them back.
+     * @return the number of objects and of bytes reclaimed.
+     */
+    private long[] sweep() {
+        Journal.checkpoint();
+        long objects = 0, bytes = 0;
+        boolean rebuildIndexes = false, packedGarbage = false;
+        byte[] id = new byte[idLength];
+        for (int k = marked.nextClearBit(0); k < count;
+             k = marked.nextClearBit(k + 1)) {
+            System.arraycopy(ids, k * idLength, id, 0, idLength);
+            String hex = Utils.toHex(id);
+            objects += 1;
+            for (ObjectStore store : stores()) {
+                long freed = store.delete(hex);
+                bytes += freed;
+                rebuildIndexes |= freed > 0 && store == Gitlet.commits;
+            }
+            ByteBuffer packed = pack == null ? null : pack.get(hex);
+            if (packed != null) {
+                bytes += packed.remaining();
+                packedGarbage = true;
+                rebuildIndexes = true;
+            }
+        }
+        if (packedGarbage) {
+            Pack.repack(this::isMarked);
+        }
+        if (rebuildIndexes) {
+            CommitGraph.rebuild();
+            IdIndex.rebuild();
+            MessageIndex.rebuild();
+            SummaryLog.rebuild();
+        }
+        return new long[] {objects, bytes};
+    }
+
+    /** Returns true iff the object named ID was marked. */
+    private boolean isMarked(String id) {
+        int k = indexOf(id);
+        return k >= 0 && marked.get(k);
+    }
+
+    /** Returns the index of the object named ID, or -1 if it is not
+     *  stored. */
+    private int indexOf(String id) {
+        byte[] key = Pack.fromHex(id);
+        int lo = 0, hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = Arrays.compareUnsigned(ids, mid * idLength,
+                    (mid + 1) * idLength, key, 0, idLength);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the stores of the commits, trees and blobs. */
+    private static ObjectStore[] stores() {
+        return new ObjectStore[] {Gitlet.commits, Gitlet.trees,
+                                  Gitlet.blobs};
+    }
+
+    /** Length of a binary object id in the repository.*/
+    private final int idLength = Utils.idBytes();
+    /** The pack, or null if there is none.*/
+    private final Pack pack;
+    /** The binary ids of all objects, sorted, back to back (followed by
+     * room left by duplicates).*/
+    private final byte[] ids;
+    /** Number of objects.*/
+    private final int count;
+    /** The bit of each object reached from the roots.*/
+    private final BitSet marked;
+}
@@ -1,36 +1,57 @@
 package gitlet;
 
-import java.io.Serializable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.Arrays;
 import java.text.SimpleDateFormat;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /** This class creates a new gitlet version control system
  * (.gitlet directory) when init is called.
+ * The repository state is kept in small files rather than in one
+ * serialized object: .gitlet/HEAD names the current branch, each file
+ * in .gitlet/refs holds the commit id a branch points to, and
+ * .gitlet/stage holds the staging area. These files are only written
+ * through the journal (see Journal), all at the end of a command.
+ * Commits are only read from the Commit directory when a command needs
+ * them.
+ * A command that fails throws a GitletException holding the error
+ * message, which Main (or the server) prints.
  *  @author Hiva Mohammadzadeh
  */
 
-public class Gitlet implements Serializable {
+public class Gitlet {
 
     /** Gitlet Constructor: creates a new gitlet version control system
-     * Initializes the staging area, branches, commits, Commit IDs and
-     * commit branches of a new git directory.
+     * with an empty staging area. Used by init.
      */
     public Gitlet() {
         stagingArea = new Staging();
-        branches = new HashMap<>();
-        allBranches = new ArrayList<>();
-        commits = new HashMap<>();
-        commitIDs = new HashMap<>();
-        branchCommits = new TreeMap<>();
+    }
+
+    /** Gitlet Constructor: the state of an existing repository, whose
+     * current branch is BRANCHNAME, pointing at HEADID, with staging
+     * area STAGE.
+     */
+    private Gitlet(String branchName, String headID, Staging stage) {
+        nameOfCurrentBranch = branchName;
+        headPointer = headID;
+        stagingArea = stage;
     }
 
     public String getHeadPtr() {
@@ -42,76 +63,134 @@ public class Gitlet implements Serializable {
     }
 
     /** INIT: Command that creates a new gitlet version control system.
-     *  It also creates an initial commit.
+     *  It also creates an initial commit. "init --hash=sha256" names the
+     *  objects of the repository by their SHA-256 rather than SHA-1.
      *  @param args String array to store the input from the user.
      */
     public void init(String[] args) {
 
-        validateInput(args, 1);
+        String hash = Config.DEFAULTS.get(Config.HASH);
+        if (args.length == 2 && args[1].startsWith(HASH_OPTION)) {
+            hash = args[1].substring(HASH_OPTION.length());
+            if (!Utils.HASHES.containsKey(hash)) {
+                throw new GitletException("No such hash.");
+            }
+        } else {
+            validateInput(args, 1);
+        }
         if (GITLET_DIRECTORY.exists()) {
-            System.out.println("A Gitlet version-control system already "
+            throw new GitletException("A Gitlet version-control system already "
                     + "exists in the current directory.");
-            System.exit(0);
         }
 
         GITLET_DIRECTORY.mkdir();
         BLOBS_DIRECTORY.mkdir();
         COMMITS_DIRECTORY.mkdir();
+        TREES_DIRECTORY.mkdir();
+        REFS_DIRECTORY.mkdir();
+        if (!hash.equals(Config.DEFAULTS.get(Config.HASH))) {
+            Config.set(Config.HASH, hash);
+        }
 
         Commit tempCommit = new Commit();
+        tempCommit.setTreeRef(Tree.build(new HashMap<>()));
         tempCommit.setTheMessage("initial commit");
         tempCommit.setTimeStamp("Thu Jan 01 00:00:00 1970 -0700");
         headPointer = tempCommit.saveTheCurrentCommit();
-        commits.put(tempCommit, getHeadPtr());
-        commitIDs.put(getHeadPtr(), tempCommit);
-        idOfInitialCommit = getHeadPtr();
-        allBranches.add("master");
-        branches.put("master", tempCommit);
         nameOfCurrentBranch = "master";
-        TreeSet<String> set = new TreeSet<>();
-        set.add(getHeadPtr());
-        branchCommits.put(nameOfCurrentBranch, set);
-        saveTheCurrentGitlet();
+        writeBranch(nameOfCurrentBranch, getHeadPtr());
+        saveCurrentBranch();
+        saveStagingArea();
     }
 
-    /** ADD: Command that stages the file for addition and
-     * adds a copy of the file from the staging area.
+    /** ADD: Command that stages the files for addition and
+     * adds a copy of the files from the staging area.
+     * Any number of files and directories may be given; directories are
+     * added with everything under them. The files are hashed and stored
+     * in parallel, and the staging area is saved once at the end.
+     * A file whose size, modification time and inode are those recorded
+     * in the stat cache is not read again.
      * @param args String array to store the input from the user.
      */
     public void add(String[] args) {
 
-        validateInput(args, 2);
-        String nameOfFile = args[1];
-        File stagingFile = Utils.join(CWD, nameOfFile);
-
-        if (!stagingFile .exists()) {
-            System.out.println("File does not exist.");
-            System.exit(0);
+        if (args.length < 2) {
+            throw new GitletException("Incorrect operands.");
+        }
+        TreeMap<String, File> files = new TreeMap<>();
+        for (int i = 1; i < args.length; i += 1) {
+            File stagingFile = Utils.join(CWD, args[i]);
+            if (!stagingFile.exists()) {
+                throw new GitletException("File does not exist.");
+            }
+            collectFiles(stagingFile, files);
         }
 
-        Commit current = commitIDs.get(getHeadPtr());
-        String originalInfo = "";
+        Commit current = Commit.getCommit(getHeadPtr());
+        Map<String, String> staged = stagingArea.getStagedBlobs();
+        Map<String, String> newBlobIDs = new ConcurrentHashMap<>();
+        files.keySet().parallelStream().forEach(nameOfFile -> {
+            String previousBlobID = staged.get(nameOfFile);
+            if (previousBlobID == null) {
+                previousBlobID = current.getBlobRef().get(nameOfFile);
+            }
+            newBlobIDs.put(nameOfFile,
+                    storeFile(files.get(nameOfFile), previousBlobID));
+        });
 
-        if (current.getBlobRef().containsKey(nameOfFile)) {
-            originalInfo = current.getBlobRef()
-                    .get(nameOfFile).getContent();
+        for (String nameOfFile : files.keySet()) {
+            String newBlobID = newBlobIDs.get(nameOfFile);
+            if (newBlobID.equals(current.getBlobRef().get(nameOfFile))) {
+                if (stagingArea.getStagedBlobs().containsKey(nameOfFile)) {
+                    stagingArea.unStageBlobs(nameOfFile);
+                }
+                if (stagingArea.getRemovedBlobs().containsKey(nameOfFile)) {
+                    stagingArea.removeBlobsReverse(nameOfFile);
+                }
+            } else {
+                stagingArea.addBlobs(nameOfFile, newBlobID);
+            }
         }
-        String newInfo = Utils.readContentsAsString(stagingFile);
+        saveStagingArea();
+    }
 
-        if (originalInfo.equals(newInfo)) {
-            if (stagingArea.getStagedBlobs().containsKey(nameOfFile)) {
-                stagingArea.unStageBlobs(nameOfFile);
+    /** Add command Helper: Collects the files to add: FILE itself if it
+     * is a plain file, else every plain file under it, skipping the
+     * .gitlet directory.
+     * @param file The file or directory given to add.
+     * @param files Map receiving the files, by name.
+     */
+    private static void collectFiles(File file, Map<String, File> files) {
+        if (file.isDirectory()) {
+            if (file.getName().equals(".gitlet")) {
+                return;
             }
-            if (stagingArea.getRemovedBlobs().containsKey(nameOfFile)) {
-                stagingArea.removeBlobsReverse(nameOfFile);
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    collectFiles(child, files);
+                }
             }
-        } else {
+        } else if (file.isFile()) {
+            files.put(nameOf(file), file);
+        }
+    }
+
+    /** Add command Helper: Returns the blob id of a working file, storing
+     * the blob unless the stat cache shows it is already stored.
+     * @param stagingFile The file to add.
+     * @param previousBlobID The id of its previous version, or null.
+     * @return the blob id.
+     */
+    private static String storeFile(File stagingFile, String previousBlobID) {
+        StatIndex index = StatIndex.get();
+        String newBlobID = index.lookup(stagingFile);
+        if (newBlobID == null || !Blob.hasBlob(newBlobID)) {
             Blob addingBlob = new Blob(stagingFile);
-            addingBlob.saveTheCurrentBlob();
-            stagingArea.addBlobs(nameOfFile, addingBlob);
+            newBlobID = addingBlob.saveTheCurrentBlob(previousBlobID);
+            index.record(stagingFile, newBlobID);
         }
-        stagingArea.saveCurrentStagingArea();
-        saveTheCurrentGitlet();
+        return newBlobID;
     }
 
     /** COMMIT: Command that saves a snapshot of the tracked files in the
@@ -124,46 +203,43 @@ public class Gitlet implements Serializable {
 
         validateInput(args, 2);
         if (args[1].isBlank()) {
-            System.out.println("Please enter a commit message.");
-            System.exit(0);
+            throw new GitletException("Please enter a commit message.");
         }
         if (stagingArea.getStagedBlobs().isEmpty()
                 && stagingArea.getRemovedBlobs().isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            System.exit(0);
+            throw new GitletException("No changes added to the commit.");
         }
 
+        makeCommit(args[1], null);
+    }
+
+    /** Commit command Helper: Makes a new commit from the head commit and
+     * the staging area, moves the current branch to it and clears the
+     * staging area. Used by commit and merge. Only the trees of the
+     * directories holding staged or removed files are rewritten.
+     * @param message String representing the commit message.
+     * @param secondParent String representing the id of the merged-in
+     *                     commit, or null.
+     */
+    private void makeCommit(String message, String secondParent) {
         Commit addingCommit = new Commit();
-        addingCommit.setTheMessage(args[1]);
+        addingCommit.setTheMessage(message);
         addingCommit.setTimeStamp(new SimpleDateFormat(
-                "EEE MMM d HH:mm:ss yyyy Z").format(new Date()));
-        Map<String, Blob> blobsStartingFromParent = Commit
-                .getCommit(getHeadPtr()).getBlobRef();
-
-        if (blobsStartingFromParent == null) {
-            addingCommit.setBlobRef(stagingArea.getStagedBlobs());
-        } else {
-            blobsStartingFromParent.putAll(stagingArea.getStagedBlobs());
-            blobsStartingFromParent.keySet().removeAll(stagingArea
-                    .getRemovedBlobs().keySet());
-            Map<String, Blob> mergedBlobs = blobsStartingFromParent;
-            addingCommit.setBlobRef(mergedBlobs);
+                Commit.DATE_FORMAT).format(new Date()));
+        Map<String, String> changes = new HashMap<>();
+        for (String removed : stagingArea.getRemovedBlobs().keySet()) {
+            changes.put(removed, null);
         }
+        changes.putAll(stagingArea.getStagedBlobs());
+        addingCommit.setTreeRef(Tree.update(Commit.getCommit(getHeadPtr())
+                .getTreeRef(), changes));
 
         addingCommit.setParentRef(getHeadPtr());
+        addingCommit.setSecondParentRef(secondParent);
         setHeadPtr(addingCommit.saveTheCurrentCommit());
-        commits.put(addingCommit, getHeadPtr());
-        commitIDs.put(getHeadPtr(), addingCommit);
-        if (!allBranches.contains(nameOfCurrentBranch)) {
-            allBranches.add(nameOfCurrentBranch);
-        }
-        branches.put(nameOfCurrentBranch, addingCommit);
-        TreeSet<String> newSet = branchCommits.get(nameOfCurrentBranch);
-        newSet.add(getHeadPtr());
-        branchCommits.put(nameOfCurrentBranch, newSet);
+        writeBranch(nameOfCurrentBranch, getHeadPtr());
         stagingArea.clearStagingArea();
-        stagingArea.saveCurrentStagingArea();
-        saveTheCurrentGitlet();
+        saveStagingArea();
     }
 
     /** CHECKOUT: Command that can do a few different things
@@ -182,40 +258,38 @@ public class Gitlet implements Serializable {
         Boolean case2 = args.length == 4 && args[2].equals("--");
         Boolean case3 = args.length == 2;
         if ((!case1) && (!case2) && (!case3)) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
         if (case1) {
-            String nameOfFile = args[2];
-            Commit checkingOutCommit = commitIDs.get(getHeadPtr());
+            String nameOfFile = nameOf(Utils.join(CWD, args[2]));
+            Commit checkingOutCommit = Commit.getCommit(getHeadPtr());
             checkoutSpecificFile(checkingOutCommit, nameOfFile);
         }
         if (case2) {
             String commitID = convertCommitID(args[1]);
             if (commitID == null) {
-                System.out.println("No commit with that id exists.");
-                System.exit(0);
+                throw new GitletException("No commit with that id exists.");
             }
-            String nameOfFile = args[3];
-            Commit checkingOutCommit = commitIDs.get(commitID);
+            String nameOfFile = nameOf(Utils.join(CWD, args[3]));
+            Commit checkingOutCommit = Commit.getCommit(commitID);
             checkoutSpecificFile(checkingOutCommit, nameOfFile);
         }
         if (case3) {
             String checkingOutBranch = args[1];
-            if (!branches.containsKey(checkingOutBranch)) {
-                System.out.println("No such branch exists.");
-                System.exit(0);
+            String checkingOutID = readBranch(checkingOutBranch);
+            if (checkingOutID == null) {
+                throw new GitletException("No such branch exists.");
             }
             if (checkingOutBranch.equals(nameOfCurrentBranch)) {
-                System.out.println("No need to checkout the current branch.");
-                System.exit(0);
+                throw new GitletException(
+                    "No need to checkout the current branch.");
             }
-            Commit currCommit = commitIDs.get(getHeadPtr());
-            Commit checkingOutCommit = branches.get(checkingOutBranch);
+            Commit currCommit = Commit.getCommit(getHeadPtr());
+            Commit checkingOutCommit = Commit.getCommit(checkingOutID);
             checkoutBranch(currCommit, checkingOutCommit);
-            setHeadPtr(commits.get(checkingOutCommit));
+            setHeadPtr(checkingOutID);
             nameOfCurrentBranch = checkingOutBranch;
-            saveTheCurrentGitlet();
+            saveCurrentBranch();
         }
     }
 
@@ -228,69 +302,119 @@ public class Gitlet implements Serializable {
     private void checkoutSpecificFile(Commit checkingOutCommit,
                                       String nameOfFile) {
 
-        if (!checkingOutCommit.getBlobRef().containsKey(nameOfFile)) {
-            System.out.println("File does not exist in that commit.");
-            System.exit(0);
+        String blobID = Tree.blobAt(checkingOutCommit.getTreeRef(),
+                nameOfFile);
+        if (blobID == null) {
+            throw new GitletException("File does not exist in that commit.");
         }
 
-        Blob checkingOutBlob = checkingOutCommit.getBlobRef().get(nameOfFile);
         File replacingFile = Utils.join(CWD, nameOfFile);
-        Utils.writeContents(replacingFile, checkingOutBlob.getContent());
+        Blob.checkoutBlob(blobID, replacingFile);
     }
 
     /** Checkout command Helper: Checks out an arbitrary commit.
+     * Only the paths that differ between the two commits' trees (found
+     * without reading the subtrees they share, see Tree.changes) and the
+     * paths of the staging area are looked at, so the work is
+     * proportional to what changed rather than to the repository. An
+     * edit that is not staged, to a file both commits have the same, is
+     * kept, as git keeps it.
      * @param currCommit The current commit that the head is pointing to.
      * @param checkingOutCommit The commit that we want to check out.
      */
     public void checkoutBranch(Commit currCommit,
                                         Commit checkingOutCommit) {
+        String currentTree = currCommit.getTreeRef();
+        String treeID = checkingOutCommit.getTreeRef();
+        Map<String, String> changes = Tree.changes(currentTree, treeID);
+        checkUntrackedInTheWay(changes, currentTree);
+        addStagedPaths(changes, currentTree, treeID);
+        switchFiles(changes);
+        stagingArea.clearStagingArea();
+        saveStagingArea();
+    }
 
-        Set<String> currentCommitFiles = currCommit.getBlobRef().keySet();
-        Set<String> checkOutFiles = checkingOutCommit
-                .getBlobRef().keySet();
-
-        List<String> untrackedFiles = findUntrackedFiles();
-        if (untrackedFiles.size() != 0) {
-            System.out.println("There is an untracked file in the way; "
-                    + "delete it, or add and commit it first.");
-            System.exit(0);
+    /** Checkout and reset Helper: fails if a working file that the
+     * current commit does not track, and that is not staged, would be
+     * overwritten.
+     * @param changes The new blob id of each path that will be written,
+     *                or null for a path that will be deleted.
+     * @param currentTree The id of the tree of the current commit.
+     */
+    private void checkUntrackedInTheWay(Map<String, String> changes,
+                                        String currentTree) {
+        Set<String> staged = stagingArea.getStagedBlobs().keySet();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() != null
+                    && !staged.contains(change.getKey())
+                    && Tree.blobAt(currentTree, change.getKey()) == null
+                    && Utils.join(CWD, change.getKey()).exists()) {
+                throw new GitletException("There is an untracked file in "
+                        + "the way; delete it, or add and commit it first.");
+            }
         }
+    }
 
-
-        for (String nameOfFile : checkOutFiles) {
-            File fileToReplace = Utils.join(CWD, nameOfFile);
-            Blob checkingOutBlob = checkingOutCommit.getBlobRef()
-                    .get(nameOfFile);
-            String content = checkingOutBlob.getContent();
-            Utils.writeContents(fileToReplace, content);
+    /** Checkout and reset Helper: adds to CHANGES the paths staged for
+     * addition or removal, so that what was staged is undone: each gets
+     * its contents in the tree checked out. A file staged for addition
+     * that neither commit tracks is left in place, untracked.
+     * @param changes The new blob id of each path to write, or null for
+     *                a path to delete; it is added to.
+     * @param currentTree The id of the tree of the current commit.
+     * @param treeID The id of the tree of the commit checked out.
+     */
+    private void addStagedPaths(Map<String, String> changes,
+                                String currentTree, String treeID) {
+        Set<String> paths = new TreeSet<>(
+                stagingArea.getStagedBlobs().keySet());
+        paths.addAll(stagingArea.getRemovedBlobs().keySet());
+        for (String path : paths) {
+            String id = Tree.blobAt(treeID, path);
+            if (!changes.containsKey(path) && (id != null
+                    || Tree.blobAt(currentTree, path) != null)) {
+                changes.put(path, id);
+            }
         }
-        for (String nameOfFile: currentCommitFiles) {
-            if (!checkOutFiles.contains(nameOfFile)) {
-                Utils.restrictedDelete(Utils.join(CWD, nameOfFile));
+    }
+
+    /** Checkout and reset Helper: Makes the working directory hold the
+     * given files. The files to delete are deleted; each other working
+     * file is compared with its new contents through the stat cache (see
+     * StatIndex.idOf), so only the files that were edited since they
+     * were last hashed are read, and the files that are missing or hold
+     * other contents are written, in parallel.
+     * @param changes The new blob id of each path to write, or null for
+     *                a path to delete.
+     */
+    private static void switchFiles(Map<String, String> changes) {
+        StatIndex stat = StatIndex.get();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                deleteFile(change.getKey());
             }
         }
-        stagingArea.clearStagingArea();
-        stagingArea.saveCurrentStagingArea();
+        changes.entrySet().parallelStream()
+            .filter(change -> change.getValue() != null).forEach(change -> {
+                File dest = Utils.join(CWD, change.getKey());
+                if (!dest.isFile()
+                        || !change.getValue().equals(stat.idOf(dest))) {
+                    Blob.checkoutBlob(change.getValue(), dest);
+                }
+            });
     }
 
     /** LOG: Command that Displays the information about each commit starting
      * from the current head commit backwards along the commit tree
      * until the initial commit.
+     * Both log and global-log print from the commit summary log, without
+     * reading commits.
      * @param args String array to store the input from the user.
      */
     public void log(String[] args) {
 
         validateInput(args, 1);
-        String pointerToHead = getHeadPtr();
-        String copyHead = pointerToHead;
-        while (copyHead != null) {
-            Commit currentCommit = Commit.getCommit(copyHead);
-            System.out.println("===");
-            System.out.println("commit " + copyHead);
-            System.out.println("Date: " + currentCommit.getTimeStamp());
-            System.out.println(currentCommit.getTheMessage() + "\n");
-            copyHead = currentCommit.getParentRef();
-        }
+        SummaryLog.printLog(getHeadPtr());
     }
 
     /** GLOBAL LOG: Command that is like log, except it displays information
@@ -300,16 +424,7 @@ public class Gitlet implements Serializable {
     public void globalLog(String[] args) {
 
         validateInput(args, 1);
-        for (File currFile : COMMITS_DIRECTORY.listFiles()) {
-            String pointerToFileName = currFile.getName();
-            if (currFile.isFile()) {
-                Commit currentCommit = Commit.getCommit(pointerToFileName);
-                System.out.println("===");
-                System.out.println("commit " + pointerToFileName);
-                System.out.println("Date: " + currentCommit.getTimeStamp());
-                System.out.println(currentCommit.getTheMessage() + "\n");
-            }
-        }
+        SummaryLog.printAll();
     }
 
     /** RM: Command that unstages the file if the file is tracked
@@ -318,62 +433,68 @@ public class Gitlet implements Serializable {
      */
     public void rm(String[] args) {
         validateInput(args, 2);
-        String nameOfFile = args[1];
-        Commit currentCommit = commitIDs.get(getHeadPtr());
+        String nameOfFile = nameOf(Utils.join(CWD, args[1]));
+        Commit currentCommit = Commit.getCommit(getHeadPtr());
         boolean checkStage = stagingArea.getStagedBlobs()
                 .containsKey(nameOfFile);
-        boolean checkCommit = currentCommit.getBlobRef()
-                .containsKey(nameOfFile);
+        String removingBlob = Tree.blobAt(currentCommit.getTreeRef(),
+                nameOfFile);
+        boolean checkCommit = removingBlob != null;
         if (!checkCommit && !checkStage) {
-            System.out.println("No reason to remove the file.");
-            System.exit(0);
+            throw new GitletException("No reason to remove the file.");
         } else {
             if (checkStage) {
                 stagingArea.unStageBlobs(nameOfFile);
             }
             if (checkCommit) {
-                Blob removingBlob = currentCommit.getBlobRef().get(nameOfFile);
                 stagingArea.removeBlobs(nameOfFile, removingBlob);
-                File removingFile = Utils.join(CWD, nameOfFile);
-                Utils.restrictedDelete(removingFile);
+                deleteFile(nameOfFile);
             }
         }
-        stagingArea.saveCurrentStagingArea();
-        saveTheCurrentGitlet();
+        saveStagingArea();
     }
 
     /** FIND: Command that prints out the ids of all commits that
      * have been given commit messages, one per line and if there
      * are multiple such commits, it prints the ids out on separate lines.
+     * With --word, it prints the commits whose messages contain all the
+     * given words instead, ignoring case, and with --substring those whose
+     * messages contain the given text.
+     * The first two are answered from the message index, and the last by
+     * scanning the texts of the summary log, without reading commits.
      * @param args String array to store the input from the user.
      */
     public void find(String[] args) {
-        validateInput(args, 2);
-        int count = 0;
-        for (File file : COMMITS_DIRECTORY.listFiles()) {
-            String pointerToFileName = file.getName();
-            Commit currCommit = commitIDs.get(pointerToFileName);
-            if (file.isFile() && currCommit.getTheMessage().equals(args[1])) {
-                count++;
-                System.out.println(file.getName());
-            }
+        List<String> found;
+        if (args.length >= 3 && args[1].equals("--word")) {
+            found = MessageIndex.withWords(
+                    Arrays.asList(args).subList(2, args.length));
+        } else if (args.length == 3 && args[1].equals("--substring")) {
+            found = SummaryLog.containing(args[2]);
+        } else {
+            validateInput(args, 2);
+            found = MessageIndex.withMessage(args[1]);
+        }
+        if (found.isEmpty()) {
+            throw new GitletException("Found no commit with that message.");
         }
-        if (count == 0) {
-            System.out.println("Found no commit with that message.");
-            System.exit(0);
+        for (String commitID : found) {
+            System.out.println(commitID);
         }
     }
 
     /** STATUS: Command that displays what branches currently exist,
      * marks the current branch with a *, and displays what files have
-     * been staged for addition or removal.
-     * Extra Credit?
+     * been staged for addition or removal, which tracked files were
+     * changed or deleted without being staged, and which files are not
+     * tracked. Working files are compared by the blob ids in the stat
+     * cache, so only the files whose metadata changed are read.
      * @param args String array to store the input from the user.
      */
     public void status(String[] args) {
         validateInput(args, 1);
         System.out.println("=== Branches ===");
-        for (String currentBranch : allBranches) {
+        for (String currentBranch : branchNames()) {
             if (currentBranch.equals(nameOfCurrentBranch)) {
                 System.out.println("*" + currentBranch);
             } else {
@@ -381,22 +502,50 @@ public class Gitlet implements Serializable {
             }
         }
         System.out.println("\n=== Staged Files ===");
-        Set<String> stagedFiles = stagingArea.getStagedBlobs().keySet();
-        for (String fileName : stagedFiles) {
+        Map<String, String> staged = stagingArea.getStagedBlobs();
+        for (String fileName : new TreeSet<>(staged.keySet())) {
             System.out.println(fileName);
         }
         System.out.println("\n=== Removed Files ===");
-        Set<String> removedFiles = stagingArea.getRemovedBlobs().keySet();
-        for (String removedFile : removedFiles) {
+        Map<String, String> removed = stagingArea.getRemovedBlobs();
+        for (String removedFile : new TreeSet<>(removed.keySet())) {
             System.out.println(removedFile);
         }
 
-        System.out.println("\n=== Modifications Not Staged For"
-                + " Commit ===\n\n=== Untracked Files ===\n");
-
+        Map<String, String> tracked = Commit.getCommit(getHeadPtr())
+                .getBlobRef();
+        TreeMap<String, File> workingFiles = new TreeMap<>();
+        collectFiles(CWD, workingFiles);
+        Set<String> working = workingFiles.keySet();
+        Set<String> names = new TreeSet<>(tracked.keySet());
+        names.addAll(staged.keySet());
+        StatIndex index = StatIndex.get();
+        System.out.println("\n=== Modifications Not Staged For Commit ===");
+        for (String name : names) {
+            String expected = staged.get(name);
+            if (expected == null && !removed.containsKey(name)) {
+                expected = tracked.get(name);
+            }
+            if (expected == null) {
+                continue;
+            }
+            if (!working.contains(name)) {
+                System.out.println(name + " (deleted)");
+            } else if (!expected.equals(index.idOf(Utils.join(CWD, name)))) {
+                System.out.println(name + " (modified)");
+            }
+        }
+        System.out.println("\n=== Untracked Files ===");
+        for (String name : working) {
+            if (!staged.containsKey(name)
+                    && (!tracked.containsKey(name)
+                        || removed.containsKey(name))) {
+                System.out.println(name);
+            }
+        }
+        System.out.println();
     }
 
-
     /** BRANCH: Command that creates a new branch with the given name,
      * and points it at the current head node.
      * A branch is a name for a reference (a SHA-1 identifier) to a
@@ -409,15 +558,11 @@ public class Gitlet implements Serializable {
     public void branch(String[] args) {
         validateInput(args, 2);
         String branch = args[1];
-        if (branches.containsKey(branch)) {
-            System.out.println("A branch with that name already exists.");
+        if (readBranch(branch) != null) {
+            throw new GitletException(
+                "A branch with that name already exists.");
         }
-        Commit currCommit = branches.get(nameOfCurrentBranch);
-        branches.put(branch, currCommit);
-        TreeSet<String> set = new TreeSet<>();
-        set.add(getHeadPtr());
-        branchCommits.put(branch, set);
-        saveTheCurrentGitlet();
+        writeBranch(branch, getHeadPtr());
     }
 
     /** RM BRANCH: Command that deletes the branch with the given name.
@@ -428,17 +573,15 @@ public class Gitlet implements Serializable {
     public void rmBranch(String[] args) {
         validateInput(args, 2);
         String branchRemoved = args[1];
-        if (!branches.containsKey(branchRemoved)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (readBranch(branchRemoved) == null) {
+            throw new GitletException(
+                "A branch with that name does not exist.");
         }
         if (nameOfCurrentBranch.equals(branchRemoved)) {
-            System.out.println("Cannot remove the current branch.");
-            System.exit(0);
+            throw new GitletException("Cannot remove the current branch.");
         }
 
-        branches.remove(branchRemoved);
-        saveTheCurrentGitlet();
+        deleteBranch(branchRemoved);
     }
 
     /** RESET: Command that checks out all the files tracked by the
@@ -447,7 +590,11 @@ public class Gitlet implements Serializable {
      * It moves the current branch's head to that commit node.
      * The staging area is cleared.
      * This command is essentially checkout of an arbitrary commit that
-     * also changes the current branch head.
+     * also changes the current branch head. Unlike checkout of a branch,
+     * it also undoes the edits that were not staged, so every file of
+     * the commit is compared with the working file; through the stat
+     * cache, only the files that differ are read and written (see
+     * switchFiles).
      * @param args String array to store the input from the user.
      */
     public void reset(String[] args) {
@@ -455,49 +602,32 @@ public class Gitlet implements Serializable {
         validateInput(args, 2);
         String id = convertCommitID(args[1]);
         if (id == null) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        Commit currCommit = branches.get(nameOfCurrentBranch);
-        Commit givenBranchCommit = commitIDs.get(args[1]);
-
-        if (givenBranchCommit == null) {
-            System.out.println("No commit with that id exists.");
-            System.exit(0);
-        }
-        Set<String> filesInCurrentCommit = currCommit.getBlobRef().keySet();
-        Set<String> filesInGivenCommit = givenBranchCommit
-                .getBlobRef().keySet();
-
-        for (String fileName : filesInGivenCommit) {
-            if (!filesInCurrentCommit.contains(fileName)
-                    && Utils.join(CWD, fileName).exists()) {
-                System.out.println("There is an untracked file in the way; "
-                        + "delete it, or add and commit it first.");
-                System.exit(0);
-            }
-        }
-        Commit resettingCommit = commitIDs.get(id);
-        for (String f : Utils.plainFilenamesIn(CWD)) {
-            if (!resettingCommit.getBlobRef().containsKey(f)) {
-                Utils.restrictedDelete(f);
-            }
+            throw new GitletException("No commit with that id exists.");
         }
+        Commit currCommit = Commit.getCommit(getHeadPtr());
+        Commit givenBranchCommit = Commit.getCommit(id);
 
-        for (String blobID : resettingCommit.getBlobRef().keySet()) {
-            checkoutSpecificFile(resettingCommit, blobID);
-        }
+        String currentTree = currCommit.getTreeRef();
+        String givenTree = givenBranchCommit.getTreeRef();
+        Map<String, String> changes = Tree.changes(currentTree, givenTree);
+        checkUntrackedInTheWay(changes, currentTree);
+        addStagedPaths(changes, currentTree, givenTree);
+        Tree.flatten(givenTree).forEach(changes::putIfAbsent);
+        switchFiles(changes);
 
-        branches.put(nameOfCurrentBranch, resettingCommit);
         setHeadPtr(id);
+        writeBranch(nameOfCurrentBranch, id);
         stagingArea.clearStagingArea();
-        saveTheCurrentGitlet();
+        saveStagingArea();
     }
 
     /** MERGE: Command that merges files from the given branch into
      * the current branch.
      * The set of commits has progressed from a simple sequence to a tree
      * and now, finally, to a full directed acyclic graph.
+     * Ancestry and the split point are found with the commit graph,
+     * without reading commits; the merged result is committed with both
+     * heads as parents.
      * @param args String array to store the input from the user.
      */
     public void merge(String[] args) {
@@ -505,37 +635,217 @@ public class Gitlet implements Serializable {
         String givenBranchName = args[1];
         if (!stagingArea.getRemovedBlobs().isEmpty()
                 || !stagingArea.getStagedBlobs().isEmpty()) {
-            System.out.println("You have uncommitted changes.");
-            System.exit(0);
+            throw new GitletException("You have uncommitted changes.");
         }
-        if (!branches.containsKey(givenBranchName)) {
-            System.out.println("A branch with that name does not exist.");
-            System.exit(0);
+        if (readBranch(givenBranchName) == null) {
+            throw new GitletException(
+                "A branch with that name does not exist.");
         }
         if (nameOfCurrentBranch.equals(givenBranchName)) {
-            System.out.println("Cannot merge a branch with itself.");
-            System.exit(0);
+            throw new GitletException("Cannot merge a branch with itself.");
         }
         List<String> untrackedFiles = findUntrackedFiles();
         if (untrackedFiles.size() != 0) {
-            System.out.println("There is an untracked file in the way; "
+            throw new GitletException("There is an untracked file in the way; "
                     + "delete it, or add and commit it first.");
-            System.exit(0);
+        }
+        String givenID = readBranch(givenBranchName);
+        if (CommitGraph.isAncestor(givenID, getHeadPtr())) {
+            System.out.println("Given branch is an ancestor of the "
+                    + "current branch.");
+            return;
+        }
+        if (CommitGraph.isAncestor(getHeadPtr(), givenID)) {
+            checkoutBranch(Commit.getCommit(getHeadPtr()),
+                    Commit.getCommit(givenID));
+            setHeadPtr(givenID);
+            writeBranch(nameOfCurrentBranch, givenID);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+        String splitID = CommitGraph.mergeBase(getHeadPtr(), givenID);
+        boolean conflict = mergeFiles(Commit.getCommit(splitID),
+                Commit.getCommit(getHeadPtr()), Commit.getCommit(givenID));
+        makeCommit("Merged " + givenBranchName + " into "
+                + nameOfCurrentBranch + ".", givenID);
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /** Merge command Helper: Updates the working directory and the
+     * staging area with the changes made in the given commit since the
+     * split point. Only the paths where the given commit's tree differs
+     * from the split point's are looked at, so directories the given
+     * branch did not touch are skipped whole; each is classified by
+     * comparing blob ids only. The files to check out and the conflicted
+     * files are then written in parallel, and the staging area is
+     * updated once they are all done.
+     * @param split The split point of the two branches.
+     * @param current The head commit of the current branch.
+     * @param given The head commit of the given branch.
+     * @return true iff some file was in conflict.
+     */
+    private boolean mergeFiles(Commit split, Commit current, Commit given) {
+        String splitTree = split.getTreeRef();
+        String currentTree = current.getTreeRef();
+        Map<String, String> givenChanges = Tree.changes(splitTree,
+                given.getTreeRef());
+
+        List<String> checkouts = new ArrayList<>();
+        List<String> removals = new ArrayList<>();
+        List<String> conflicts = new ArrayList<>();
+        Map<String, String> currentBlobs = new HashMap<>();
+        for (Map.Entry<String, String> change : givenChanges.entrySet()) {
+            String name = change.getKey();
+            String splitID = Tree.blobAt(splitTree, name);
+            String currentID = Tree.blobAt(currentTree, name);
+            String givenID = change.getValue();
+            currentBlobs.put(name, currentID);
+            if (Objects.equals(currentID, givenID)) {
+                continue;
+            } else if (!Objects.equals(splitID, currentID)) {
+                conflicts.add(name);
+            } else if (givenID == null) {
+                removals.add(name);
+            } else {
+                checkouts.add(name);
+            }
+        }
+
+        Map<String, String> merged = new ConcurrentHashMap<>();
+        checkouts.parallelStream().forEach(name -> {
+            Blob.checkoutBlob(givenChanges.get(name), Utils.join(CWD, name));
+            merged.put(name, givenChanges.get(name));
+        });
+        conflicts.parallelStream().forEach(name -> merged.put(name,
+                writeConflict(name, currentBlobs.get(name),
+                        givenChanges.get(name))));
+
+        for (String name : removals) {
+            stagingArea.removeBlobs(name, currentBlobs.get(name));
+            deleteFile(name);
+        }
+        for (String name : givenChanges.keySet()) {
+            if (merged.containsKey(name)) {
+                stagingArea.addBlobs(name, merged.get(name));
+            }
+        }
+        return !conflicts.isEmpty();
+    }
+
+    /** Merge command Helper: Writes a conflicted file, holding both
+     * versions between conflict markers, and saves it as a blob.
+     * @param nameOfFile String representing the name of the file.
+     * @param currentID the id of the current version, or null if deleted.
+     * @param givenID the id of the given version, or null if deleted.
+     * @return the id of the blob of the conflicted file.
+     */
+    private static String writeConflict(String nameOfFile, String currentID,
+                                        String givenID) {
+        File file = Utils.join(CWD, nameOfFile);
+        try (OutputStream out = Files.newOutputStream(file.toPath())) {
+            out.write("<<<<<<< HEAD\n".getBytes(StandardCharsets.UTF_8));
+            copyBlob(currentID, out);
+            out.write("=======\n".getBytes(StandardCharsets.UTF_8));
+            copyBlob(givenID, out);
+            out.write(">>>>>>>\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        String blobID = new Blob(file).saveTheCurrentBlob(currentID);
+        StatIndex.get().record(file, blobID);
+        return blobID;
+    }
+
+    /** Merge command Helper: Copies the contents of a blob to OUT.
+     * @param blobID the id of the blob, or null for an empty file.
+     * @param out the stream to write to.
+     */
+    private static void copyBlob(String blobID, OutputStream out)
+        throws IOException {
+        if (blobID != null) {
+            try (InputStream in = Blob.openBlob(blobID)) {
+                in.transferTo(out);
+            }
         }
     }
 
     /** Finds the commit id that matches the abbreviated id provided by user.
-     * Used in checkout and reset.
+     * Used in checkout and reset. Abbreviated ids are resolved with the
+     * sorted id index; a prefix that matches several commits is an error.
      * @param abbrevID string representing the abbreviated id.
-     * @return the commit id.
+     * @return the commit id, or null if no commit matches.
      */
     public String convertCommitID(String abbrevID) {
-        for (String id : commits.values()) {
-            if (id.startsWith(abbrevID)) {
-                return id;
-            }
+        if (abbrevID.length() == Utils.uidLength()) {
+            return commits.has(abbrevID) ? abbrevID : null;
+        }
+        List<String> matches = IdIndex.lookup(abbrevID);
+        if (matches.size() > 1) {
+            throw new GitletException(
+                "More than one commit has that id prefix.");
         }
-        return null;
+        return matches.isEmpty() ? null : matches.get(0);
+    }
+
+    /** REPACK: Command that moves all loose blobs and commits into the
+     * pack, so that the object directories stay small and objects are
+     * looked up through the pack's memory-mapped index.
+     * @param args String array to store the input from the user.
+     */
+    public void repack(String[] args) {
+        validateInput(args, 1);
+        Pack.repack();
+    }
+
+    /** GC: Command that deletes the commits, trees and blobs that can no
+     * longer be reached from a branch, the reflog's recent entries or the
+     * staging area, and reports how much space that reclaimed.
+     * @param args String array to store the input from the user.
+     */
+    public void gc(String[] args) {
+        validateInput(args, 1);
+        List<String> heads = new ArrayList<>();
+        for (String branch : branchNames()) {
+            heads.add(readBranch(branch));
+        }
+        List<String> staged = new ArrayList<>(
+                stagingArea.getStagedBlobs().values());
+        staged.addAll(stagingArea.getRemovedBlobs().values());
+        long[] reclaimed = GarbageCollector.collect(heads, staged);
+        System.out.println("Removed " + reclaimed[0]
+                + " unreachable objects, " + reclaimed[1] + " bytes.");
+    }
+
+    /** CONFIG: Command that prints the value of a repository setting, or
+     * sets it when a value is given.
+     * Settings: delta (store new versions of files as deltas against the
+     * previous version) and delta.depth (longest chain of deltas).
+     * @param args String array to store the input from the user.
+     */
+    public void config(String[] args) {
+        if (args.length != 2 && args.length != 3) {
+            throw new GitletException("Incorrect operands.");
+        }
+        if (!Config.isKey(args[1])) {
+            throw new GitletException("No such setting.");
+        }
+        if (args.length == 2) {
+            System.out.println(Config.get(args[1]));
+        } else if (args[1].equals(Config.HASH)) {
+            throw new GitletException("The hash is chosen by init.");
+        } else {
+            Config.set(args[1], args[2]);
+        }
+    }
+
+    /** Function that lists the ids of all commits ever made, whether they
+     * are loose in the Commit directory or in the pack.
+     * @return the list of commit ids.
+     */
+    static List<String> allCommitIDs() {
+        return commits.ids();
     }
 
     /** Function that keeps track of all the untracked files.
@@ -543,11 +853,13 @@ public class Gitlet implements Serializable {
      * the untracked files.
      */
     List<String> findUntrackedFiles() {
-        Commit commit = commitIDs.get(getHeadPtr());
+        Commit commit = Commit.getCommit(getHeadPtr());
         List<String> fileNames = new ArrayList<>();
-        Map<String, Blob> blobs = commit.getBlobRef();
+        Map<String, String> blobs = commit.getBlobRef();
         Set<String> stagedFiles = stagingArea.getStagedBlobs().keySet();
-        for (String fileName : Utils.plainFilenamesIn(CWD)) {
+        TreeMap<String, File> workingFiles = new TreeMap<>();
+        collectFiles(CWD, workingFiles);
+        for (String fileName : workingFiles.keySet()) {
             if (!blobs.containsKey(fileName)
                     && !stagedFiles.contains(fileName)) {
                 fileNames.add(fileName);
@@ -556,22 +868,211 @@ public class Gitlet implements Serializable {
         return fileNames;
     }
 
-    /** Function that creates a new .gitlet file, and
-     * writes new gitlet object to .gitlet directory.
-     * It saves the current state of the git after commands.
+    /** Function that deletes a tracked working file, and then the
+     * directories above it that it leaves empty, and forgets it in the
+     * stat cache.
+     * @param nameOfFile the name of the file (see nameOf).
+     */
+    static void deleteFile(String nameOfFile) {
+        File file = Utils.join(CWD, nameOfFile);
+        if (nameOfFile.indexOf('/') < 0) {
+            Utils.restrictedDelete(file);
+        } else if (file.isFile() && file.delete()) {
+            File dir = file.getParentFile();
+            while (!nameOf(dir).isEmpty() && dir.delete()) {
+                dir = dir.getParentFile();
+            }
+        }
+        StatIndex.get().forget(file);
+    }
+
+    /** Function that returns the name a working file is tracked under:
+     * its path relative to the working directory, with '/' separators.
+     * @param file the working file.
+     * @return the name of the file.
+     */
+    static String nameOf(File file) {
+        Path root = CWD.toPath().toAbsolutePath().normalize();
+        return root.relativize(file.toPath().toAbsolutePath().normalize())
+            .toString().replace(File.separatorChar, '/');
+    }
+
+    /** Function that reads the commit id the given branch points to.
+     * @param branchName String representing the name of the branch.
+     * @return the commit id, or null if there is no such branch.
      */
-    public void saveTheCurrentGitlet() {
-        File newGitletFile = Utils.join(".gitlet", "gitlet");
-        Utils.writeObject(newGitletFile, this);
+    static String readBranch(String branchName) {
+        if (pendingRefs != null && pendingRefs.containsKey(branchName)) {
+            return pendingRefs.get(branchName);
+        }
+        byte[] ref = Journal.read(Utils.join(REFS_DIRECTORY, branchName));
+        return ref == null ? null : new String(ref, StandardCharsets.UTF_8);
+    }
+
+    /** Function that points the given branch at the given commit,
+     * creating the branch if it does not exist yet, and records it in
+     * the reflog.
+     * @param branchName String representing the name of the branch.
+     * @param commitID String representing the id of the commit.
+     */
+    static void writeBranch(String branchName, String commitID) {
+        if (pendingRefs != null) {
+            pendingRefs.put(branchName, commitID);
+        } else {
+            Journal.write(Utils.join(REFS_DIRECTORY, branchName), commitID);
+        }
+        Reflog.add(commitID);
+    }
+
+    /** Function that deletes the given branch.
+     * @param branchName String representing the name of the branch.
+     */
+    static void deleteBranch(String branchName) {
+        if (pendingRefs != null) {
+            pendingRefs.put(branchName, null);
+        } else {
+            Journal.delete(Utils.join(REFS_DIRECTORY, branchName));
+        }
+    }
+
+    /** Function that lists the branches, including those made or deleted
+     * by writes that are still deferred.
+     * @return the names of the branches, in order.
+     */
+    static List<String> branchNames() {
+        TreeSet<String> names =
+            new TreeSet<>(Journal.names(REFS_DIRECTORY));
+        if (pendingRefs != null) {
+            for (Map.Entry<String, String> ref : pendingRefs.entrySet()) {
+                if (ref.getValue() == null) {
+                    names.remove(ref.getKey());
+                } else {
+                    names.add(ref.getKey());
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Function that records the name of the current branch in HEAD.
+     * It only needs to be called when the current branch changes.
+     */
+    private void saveCurrentBranch() {
+        if (pendingRefs != null) {
+            loaded = this;
+        } else {
+            Journal.write(HEAD_FILE, nameOfCurrentBranch);
+        }
+    }
+
+    /** Function that saves the staging area after a change. */
+    private void saveStagingArea() {
+        if (pendingRefs != null) {
+            loaded = this;
+        } else {
+            stagingArea.saveCurrentStagingArea();
+        }
     }
 
     /** Function that is used to get the current Gitlet object.
-     * Used in main to access the current gitlet object.
+     * Used in main to access the current gitlet object. Only HEAD,
+     * the current branch's ref and the staging area are read; no
+     * commit is loaded until a command asks for it. While writes are
+     * deferred, the object the previous command left is returned
+     * instead, without reading anything.
      * @return The gitlet object that was read.
      */
     public static Gitlet getGitlet() {
-        File gitlet = Utils.join(".gitlet", "gitlet");
-        return Utils.readObject(gitlet, Gitlet.class);
+        if (pendingRefs != null && loaded != null) {
+            return loaded;
+        }
+        String branchName =
+            new String(Journal.read(HEAD_FILE), StandardCharsets.UTF_8);
+        Gitlet result = new Gitlet(branchName, readBranch(branchName),
+                Staging.getStagingArea());
+        if (pendingRefs != null) {
+            loaded = result;
+        }
+        return result;
+    }
+
+    /** Function that starts deferring the writes of the repository
+     * state: from now on HEAD, the refs, the staging area and the stat
+     * cache are kept in memory, and only written by flush. The objects
+     * and the side indexes are still written as they are made; until
+     * the refs are flushed, nothing points at the new ones.
+     */
+    static void deferWrites() {
+        pendingRefs = new TreeMap<>();
+        loaded = null;
+    }
+
+    /** Returns true iff writes are being deferred. */
+    static boolean isDeferring() {
+        return pendingRefs != null;
+    }
+
+    /** Function that writes the state kept in memory while writes are
+     * deferred, as one transaction of the journal (see Journal). The
+     * writes stay deferred.
+     */
+    static void flush() {
+        if (pendingRefs == null) {
+            return;
+        }
+        if (loaded != null) {
+            Journal.write(HEAD_FILE, loaded.nameOfCurrentBranch);
+            loaded.stagingArea.saveCurrentStagingArea();
+        }
+        for (Map.Entry<String, String> ref : pendingRefs.entrySet()) {
+            File file = Utils.join(REFS_DIRECTORY, ref.getKey());
+            if (ref.getValue() == null) {
+                Journal.delete(file);
+            } else {
+                Journal.write(file, ref.getValue());
+            }
+        }
+        pendingRefs.clear();
+        StatIndex.saveIfChanged();
+        Journal.commit();
+    }
+
+    /** Function that remembers the state kept in memory while writes are
+     * deferred (the refs written, HEAD, the head commit and a copy of the
+     * staging area), so that a command that fails can be undone by
+     * rollback.
+     */
+    static void mark() {
+        if (pendingRefs == null) {
+            return;
+        }
+        markedRefs = new TreeMap<>(pendingRefs);
+        markedState = loaded == null ? null
+            : new Gitlet(loaded.nameOfCurrentBranch, loaded.headPointer,
+                    Staging.decode(loaded.stagingArea.encode()));
+    }
+
+    /** Function that returns the state kept in memory while writes are
+     * deferred to what it was at the last mark, dropping what a command
+     * that failed changed there before its error.
+     */
+    static void rollback() {
+        if (pendingRefs == null || markedRefs == null) {
+            return;
+        }
+        pendingRefs.clear();
+        pendingRefs.putAll(markedRefs);
+        loaded = markedState;
+    }
+
+    /** Function that stops deferring writes, dropping what was not
+     * flushed; the next command reads the repository again.
+     */
+    static void stopDeferring() {
+        pendingRefs = null;
+        loaded = null;
+        markedRefs = null;
+        markedState = null;
     }
 
     /** Function that checks the number of arguments with the expected
@@ -581,8 +1082,7 @@ public class Gitlet implements Serializable {
      */
     public static void validateInput(String[] args, int expectedArgs) {
         if (args.length != expectedArgs) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw new GitletException("Incorrect operands.");
         }
     }
 
@@ -591,29 +1091,57 @@ public class Gitlet implements Serializable {
     private Staging stagingArea;
     /** String representing the pointer to the head commit.*/
     private String headPointer;
-    /** String representing SHA-1 reference to initial commit.*/
-    private String idOfInitialCommit;
     /** String to track the current baranch.*/
     private String nameOfCurrentBranch;
 
+    /** The ref writes deferred since the last flush: the commit id of
+     * each branch written, or null for a branch deleted; null when
+     * writes are not deferred.*/
+    private static Map<String, String> pendingRefs;
+    /** The state the last command left, while writes are deferred.*/
+    private static Gitlet loaded;
+    /** The deferred ref writes at the last mark.*/
+    private static Map<String, String> markedRefs;
+    /** A copy of the state kept in memory at the last mark, or null if
+     * none was loaded yet.*/
+    private static Gitlet markedState;
+
+    /** Option of init choosing the hash of the repository.*/
+    private static final String HASH_OPTION = "--hash=";
+
     /** File directory which is the current directory.*/
     static final File CWD = new File(".");
     /** File directory where gitlet repository is.*/
     static final File GITLET_DIRECTORY = Utils.join(CWD, ".gitlet");
     /** File directory where the blobs are.*/
     static final File BLOBS_DIRECTORY = Utils.join(GITLET_DIRECTORY, "Blob");
+    /** File directory where the trees are.*/
+    static final File TREES_DIRECTORY = Utils.join(GITLET_DIRECTORY, "Tree");
     /** File directory where the commits are.*/
     static final File COMMITS_DIRECTORY
             = Utils.join(GITLET_DIRECTORY, "Commit");
+    /** File directory holding one file per branch, containing the id of
+     * the commit at the head of that branch.*/
+    static final File REFS_DIRECTORY = Utils.join(GITLET_DIRECTORY, "refs");
+    /** File holding the name of the current branch.*/
+    static final File HEAD_FILE = Utils.join(GITLET_DIRECTORY, "HEAD");
+
+    /** The loose blobs.*/
+    static final LooseStore LOOSE_BLOBS = new LooseStore(BLOBS_DIRECTORY);
+    /** The loose trees.*/
+    static final LooseStore LOOSE_TREES = new LooseStore(TREES_DIRECTORY);
+    /** The loose commits.*/
+    static final LooseStore LOOSE_COMMITS =
+        new LooseStore(COMMITS_DIRECTORY);
 
-    /** Map representing the branches.*/
-    private Map<String, Commit> branches;
-    /** ArrayList representing the branches.*/
-    private ArrayList<String> allBranches;
-    /** Map representing the branch of all the commits.*/
-    private Map<String, TreeSet<String>> branchCommits;
-    /** Map representing the commits.*/
-    private Map<Commit, String> commits;
-    /** Map representing the commit IDs.*/
-    private Map<String, Commit> commitIDs;
+    /** The store blobs are read from and written to: loose blobs over
+     * the packed ones. Unit tests may swap in a MemoryStore.*/
+    static ObjectStore blobs =
+        new LayeredStore(LOOSE_BLOBS, new PackStore(Pack.BLOB));
+    /** The store of the trees, like blobs.*/
+    static ObjectStore trees =
+        new LayeredStore(LOOSE_TREES, new PackStore(Pack.TREE));
+    /** The store of the commits, like blobs.*/
+    static ObjectStore commits =
+        new LayeredStore(LOOSE_COMMITS, new PackStore(Pack.COMMIT));
 }
@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/** This class represents the index of commit ids used to resolve
+ * abbreviated ids. The ids are kept in binary, sorted, in
+ * .gitlet/ids, which is memory-mapped and binary-searched, so a prefix
+ * is resolved in logarithmic time without listing the Commit directory.
+ * New ids are appended to a small unsorted journal, .gitlet/ids.new,
+ * which is searched linearly and merged into the sorted file once it
+ * holds JOURNAL_LIMIT ids. Both files are a plain sequence of ids; the
+ * index is rebuilt from the commits if the sorted file is missing.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class IdIndex {
+
+    /** Function that finds the commits whose ids start with the given
+     * prefix.
+     * @param prefix a hexadecimal prefix of a commit id.
+     * @return the matching ids: none, one, or two when the prefix is
+     * ambiguous (further matches are not looked for).
+     */
+    static List<String> lookup(String prefix) {
+        prefix = prefix.toLowerCase();
+        List<String> result = new ArrayList<>(2);
+        byte[] low = prefix.length() <= Utils.uidLength()
+            ? Pack.fromHex(pad(prefix)) : null;
+        if (low == null) {
+            return result;
+        }
+        ByteBuffer sorted = mapSorted();
+        int idLength = low.length;
+        int count = sorted.capacity() / idLength;
+        int lo = 0, hi = count;
+        byte[] id = new byte[idLength];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            sorted.get(mid * idLength, id);
+            if (Arrays.compareUnsigned(id, low) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int k = lo; k < count && result.size() < 2; k += 1) {
+            sorted.get(k * idLength, id);
+            String hex = Utils.toHex(id);
+            if (!hex.startsWith(prefix)) {
+                break;
+            }
+            result.add(hex);
+        }
+        for (String hex : readJournal()) {
+            if (result.size() < 2 && hex.startsWith(prefix)
+                    && !result.contains(hex)) {
+                result.add(hex);
+            }
+        }
+        return result;
+    }
+
+    /** Function that adds the id of a new commit to the index, merging
+     * the journal into the sorted file when it gets full.
+     * @param commitID the id of the new commit.
+     */
+    static synchronized void add(String commitID) {
+        if (!SORTED_FILE.isFile()) {
+            TreeSet<String> ids = new TreeSet<>(Gitlet.allCommitIDs());
+            ids.add(commitID);
+            write(ids);
+            return;
+        }
+        try (FileChannel out = FileChannel.open(JOURNAL_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer id = ByteBuffer.wrap(Pack.fromHex(commitID));
+            while (id.hasRemaining()) {
+                out.write(id);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        int idLength = Utils.idBytes();
+        if (JOURNAL_FILE.length() >= (long) JOURNAL_LIMIT * idLength) {
+            TreeSet<String> ids = new TreeSet<>(readJournal());
+            ByteBuffer sorted = mapSorted();
+            byte[] id = new byte[idLength];
+            for (int k = 0; k < sorted.capacity() / idLength; k += 1) {
+                sorted.get(k * idLength, id);
+                ids.add(Utils.toHex(id));
+            }
+            write(ids);
+        }
+    }
+
+    /** Function that writes the index anew from all the commits in the
+     * repository.
+     */
+    static synchronized void rebuild() {
+        write(new TreeSet<>(Gitlet.allCommitIDs()));
+    }
+
+    /** Function that replaces the sorted file by the given ids and
+     * empties the journal.
+     * @param ids the ids, in order.
+     */
+    private static void write(TreeSet<String> ids) {
+        ByteBuffer records =
+            ByteBuffer.allocate(ids.size() * Utils.idBytes());
+        for (String id : ids) {
+            records.put(Pack.fromHex(id));
+        }
+        records.flip();
+        File temp = Blob.newTempFile();
+        try {
+            try (FileChannel out = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                while (records.hasRemaining()) {
+                    out.write(records);
+                }
+            }
+            Files.move(temp.toPath(), SORTED_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(JOURNAL_FILE.toPath());
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that maps the sorted file, building it first if needed.
+     * @return the sorted ids.
+     */
+    private static synchronized ByteBuffer mapSorted() {
+        if (!SORTED_FILE.isFile()) {
+            rebuild();
+        }
+        try (FileChannel channel = FileChannel.open(SORTED_FILE.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that reads the ids in the journal.
+     * @return the ids, in the order they were added.
+     */
+    private static List<String> readJournal() {
+        List<String> result = new ArrayList<>();
+        if (JOURNAL_FILE.isFile()) {
+            byte[] journal = Utils.readContents(JOURNAL_FILE);
+            int idLength = Utils.idBytes();
+            for (int k = 0; k + idLength <= journal.length;
+                 k += idLength) {
+                result.add(Utils.toHex(
+                        Arrays.copyOfRange(journal, k, k + idLength)));
+            }
+        }
+        return result;
+    }
+
+    /** Returns PREFIX padded with zeros to the length of an id. */
+    private static String pad(String prefix) {
+        StringBuilder result = new StringBuilder(prefix);
+        while (result.length() < Utils.uidLength()) {
+            result.append('0');
+        }
+        return result.toString();
+    }
+
+    /** The sorted ids.*/
+    static final File SORTED_FILE = Utils.join(Gitlet.GITLET_DIRECTORY, "ids");
+    /** The ids added since the sorted file was last written.*/
+    static final File JOURNAL_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "ids.new");
+
+    /** Number of ids in the journal at which it is merged.*/
+    private static final int JOURNAL_LIMIT = 1024;
+}
@@ -0,0 +1,532 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/** This class represents the write-ahead journal the state of the
+ * repository is written through. The files a command changes (HEAD, the
+ * refs, the staging area and the configuration) are not written while
+ * it runs: their new contents are kept in memory, where later reads find
+ * them, until commit writes them all at the end of the command. Commit
+ * first appends the whole change to .gitlet/journal as one transaction,
+ * checksummed, and syncs the journal to disk; only then is each file
+ * replaced, by writing a temporary file and renaming it over the old
+ * one. A crash before the sync leaves every file as it was, and a crash
+ * after it is repaired when the next command starts, by replaying the
+ * transactions it had not applied (see recover).
+ *
+ * The objects a command stored are made durable in the same step,
+ * before the state that points at them. As long as they add up to at
+ * most INLINE_LIMIT bytes they are copied into the transaction, so the
+ * one sync of the journal covers them too; otherwise they are synced
+ * all together, in parallel, before the journal is. Either way a command
+ * waits for the disk once or twice rather than once per file it wrote.
+ *
+ * Files that are only ever appended to (the reflog) are not copied
+ * into the journal: what a command adds to them is kept in memory too,
+ * and appended once its transaction is written, so that a command that
+ * fails adds nothing.
+ *
+ * The journal is emptied by a checkpoint, which syncs every file it
+ * names: when it has grown past CHECKPOINT_SIZE, and before gc or repack
+ * delete loose objects, which replaying it would bring back.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Journal {
+
+    /** Function that gives a file of the repository state new contents,
+     * written when the command commits.
+     * @param file the file.
+     * @param contents its new contents.
+     */
+    static void write(File file, String contents) {
+        write(file, contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Function that gives a file of the repository state new contents,
+     * written when the command commits.
+     * @param file the file.
+     * @param contents its new contents.
+     */
+    static synchronized void write(File file, byte[] contents) {
+        pending.put(file, contents);
+    }
+
+    /** Function that deletes a file of the repository state when the
+     * command commits.
+     * @param file the file.
+     */
+    static synchronized void delete(File file) {
+        pending.put(file, null);
+    }
+
+    /** Function that reads a file of the repository state, as the
+     * command left it so far.
+     * @param file the file.
+     * @return its contents, or null if there is no such file.
+     */
+    static synchronized byte[] read(File file) {
+        if (pending.containsKey(file)) {
+            return pending.get(file);
+        }
+        return file.isFile() ? Utils.readContents(file) : null;
+    }
+
+    /** Function that lists the plain files of a directory of the
+     * repository state, as the command left it so far.
+     * @param dir the directory.
+     * @return the names of the files, in order.
+     */
+    static synchronized List<String> names(File dir) {
+        TreeSet<String> names = new TreeSet<>(Utils.plainFilenamesIn(dir));
+        for (Map.Entry<File, byte[]> write : pending.entrySet()) {
+            File file = write.getKey();
+            if (dir.equals(file.getParentFile())) {
+                if (write.getValue() == null) {
+                    names.remove(file.getName());
+                } else {
+                    names.add(file.getName());
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /** Function that adds bytes at the end of a file that is only ever
+     * appended to, when the command commits.
+     * @param file the file.
+     * @param bytes the bytes to add.
+     */
+    static synchronized void appendTo(File file, byte[] bytes) {
+        appends.add(Map.entry(file, bytes));
+    }
+
+    /** Function that returns what will be added to a file when the
+     * command commits (see appendTo).
+     * @param file the file.
+     * @return the bytes still to be added, in order.
+     */
+    static synchronized byte[] appended(File file) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (Map.Entry<File, byte[]> append : appends) {
+            if (append.getKey().equals(file)) {
+                result.writeBytes(append.getValue());
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /** Function that records an object file that was just stored, to be
+     * made durable when the command commits.
+     * @param file the file of the object.
+     */
+    static synchronized void added(File file) {
+        objects.add(file);
+    }
+
+    /** Function that marks the start of a command, whose writes abort
+     * drops. */
+    static synchronized void begin() {
+        savepoint.clear();
+        savepoint.putAll(pending);
+        appendsAtBegin = appends.size();
+    }
+
+    /** Function that drops the writes of a command that failed, keeping
+     * those made before it began (by the commands before it in a batch),
+     * and has the settings read again, since the command may have
+     * changed them (see Config). The objects it stored are still synced
+     * by the next commit. The settings are forgotten outside the lock
+     * of the journal, which Config takes inside its own. */
+    static void abort() {
+        synchronized (Journal.class) {
+            pending.clear();
+            pending.putAll(savepoint);
+            appends.subList(appendsAtBegin, appends.size()).clear();
+        }
+        Config.forget();
+    }
+
+    /** Function that makes the objects stored and the state written by
+     * the command durable, and then writes the state and adds to the
+     * files appended to.
+     */
+    static synchronized void commit() {
+        if (pending.isEmpty() && objects.isEmpty()) {
+            applyAppends();
+            return;
+        }
+        recover();
+        long total = 0;
+        for (File object : objects) {
+            total += object.length();
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(body)) {
+            if (total <= INLINE_LIMIT) {
+                for (File object : objects) {
+                    if (object.isFile()) {
+                        putRecord(out, object, Utils.readContents(object));
+                    }
+                }
+            } else {
+                syncAll(objects);
+            }
+            for (Map.Entry<File, byte[]> write : pending.entrySet()) {
+                putRecord(out, write.getKey(), write.getValue());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        append(body.toByteArray());
+        for (Map.Entry<File, byte[]> write : pending.entrySet()) {
+            apply(write.getKey(), write.getValue());
+        }
+        pending.clear();
+        savepoint.clear();
+        objects.clear();
+        markApplied(JOURNAL_FILE.length());
+        applyAppends();
+        if (JOURNAL_FILE.length() > CHECKPOINT_SIZE) {
+            checkpoint();
+        }
+    }
+
+    /** Function that adds what the command appended (see appendTo) to
+     * the end of each file. */
+    private static void applyAppends() {
+        for (Map.Entry<File, byte[]> append : appends) {
+            try (FileChannel out = FileChannel.open(
+                    append.getKey().toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer bytes = ByteBuffer.wrap(append.getValue());
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        appends.clear();
+        appendsAtBegin = 0;
+    }
+
+    /** Function that replays the journal the first time it is called: a
+     * command that crashed may have synced its transaction without
+     * writing all of its files, or the files it wrote may have been lost
+     * with the rest of what the disk had not written yet. Every file the
+     * complete transactions name is given its last contents there, if it
+     * does not have them; a transaction cut short by the crash is
+     * dropped. Only the transactions after the applied offset (see
+     * appliedOffset) are read, so after a command that ended normally
+     * there is nothing to do.
+     */
+    static synchronized void recover() {
+        if (recovered) {
+            return;
+        }
+        recovered = true;
+        long start = appliedOffset();
+        if (!JOURNAL_FILE.isFile() || JOURNAL_FILE.length() <= start) {
+            return;
+        }
+        byte[] log = readFrom(start);
+        Map<File, byte[]> state = new LinkedHashMap<>();
+        int end = readTransactions(log, state);
+        for (Map.Entry<File, byte[]> write : state.entrySet()) {
+            File file = write.getKey();
+            byte[] now = file.isFile() ? Utils.readContents(file) : null;
+            if (!Arrays.equals(now, write.getValue())) {
+                apply(file, write.getValue());
+            }
+        }
+        if (end < log.length) {
+            truncate(start + end);
+        }
+        markApplied(start + end);
+    }
+
+    /** Function that returns how much of the journal is known to have
+     * been applied: the offset recorded in .gitlet/journal.applied by the
+     * last command that wrote its files. That file is not synced, so it
+     * is only trusted while the system has not restarted since it was
+     * written (as told by the start time of process 1, the first process
+     * the system or container started): until then, the files it covers
+     * are at least in memory, where every process reads them from. After
+     * a restart, or where the start time is not known, the whole journal
+     * is replayed.
+     * @return the offset of the first transaction to replay.
+     */
+    private static long appliedOffset() {
+        if (BOOT_STAMP == 0 || !APPLIED_FILE.isFile()) {
+            return 0;
+        }
+        ByteBuffer marker = ByteBuffer.wrap(Utils.readContents(APPLIED_FILE));
+        if (marker.remaining() != 2 * Long.BYTES
+                || marker.getLong() != BOOT_STAMP) {
+            return 0;
+        }
+        long offset = marker.getLong();
+        return offset <= JOURNAL_FILE.length() ? offset : 0;
+    }
+
+    /** Function that records that the journal was applied up to the given
+     * offset (see appliedOffset).
+     * @param offset the end of the last transaction applied.
+     */
+    private static void markApplied(long offset) {
+        ByteBuffer marker = ByteBuffer.allocate(2 * Long.BYTES);
+        marker.putLong(BOOT_STAMP).putLong(offset);
+        Utils.writeContents(APPLIED_FILE, marker.array());
+    }
+
+    /** Returns the start time of process 1 in milliseconds, or 0 if it is
+     *  not known. */
+    private static long bootStamp() {
+        return ProcessHandle.of(1).flatMap(init -> init.info().startInstant())
+            .map(Instant::toEpochMilli).orElse(0L);
+    }
+
+    /** Function that reads the journal from the given offset on.
+     * @param start the offset.
+     * @return the bytes from START to the end of the journal.
+     */
+    private static byte[] readFrom(long start) {
+        try (FileChannel in = FileChannel.open(JOURNAL_FILE.toPath())) {
+            ByteBuffer result = ByteBuffer.allocate(
+                    (int) (in.size() - start));
+            while (result.hasRemaining()) {
+                if (in.read(result, start + result.position()) < 0) {
+                    break;
+                }
+            }
+            return result.array();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that syncs every file the journal names, so that it is no
+     * longer needed, and empties it.
+     */
+    static synchronized void checkpoint() {
+        recover();
+        if (!JOURNAL_FILE.isFile() || JOURNAL_FILE.length() == 0) {
+            return;
+        }
+        Map<File, byte[]> state = new LinkedHashMap<>();
+        readTransactions(Utils.readContents(JOURNAL_FILE), state);
+        syncAll(state.keySet());
+        truncate(0);
+        markApplied(0);
+    }
+
+    /** Function that writes one record of a transaction to OUT.
+     * @param out the transaction.
+     * @param file the file written.
+     * @param contents its new contents, or null if it is deleted.
+     */
+    private static void putRecord(DataOutputStream out, File file,
+                                  byte[] contents) throws IOException {
+        out.writeByte(contents == null ? DELETE : WRITE);
+        out.writeUTF(file.getPath());
+        if (contents != null) {
+            out.writeInt(contents.length);
+            out.write(contents);
+        }
+    }
+
+    /** Function that appends a transaction to the journal and syncs it.
+     * A transaction is the length of its records, the records and their
+     * CRC-32.
+     * @param records the records of the transaction.
+     */
+    private static void append(byte[] records) {
+        boolean created = !JOURNAL_FILE.exists();
+        ByteBuffer transaction = ByteBuffer.allocate(records.length
+                + Integer.BYTES + Long.BYTES);
+        transaction.putInt(records.length).put(records)
+            .putLong(checksum(records, 0, records.length)).flip();
+        try (FileChannel out = FileChannel.open(JOURNAL_FILE.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (transaction.hasRemaining()) {
+                out.write(transaction);
+            }
+            out.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (created) {
+            sync(Gitlet.GITLET_DIRECTORY);
+        }
+    }
+
+    /** Function that reads the complete transactions of a journal.
+     * @param log the contents of the journal.
+     * @param state map from file to its last contents in the journal
+     * (null if it was deleted), filled in order of first write.
+     * @return the length of the complete transactions, after which the
+     * rest of the journal is a transaction cut short.
+     */
+    private static int readTransactions(byte[] log,
+                                        Map<File, byte[]> state) {
+        int end = 0;
+        ByteBuffer in = ByteBuffer.wrap(log);
+        while (in.remaining() >= Integer.BYTES) {
+            int length = in.getInt();
+            if (length < 0 || in.remaining() < (long) length + Long.BYTES
+                    || in.getLong(in.position() + length)
+                    != checksum(log, in.position(), length)) {
+                break;
+            }
+            try (DataInputStream records = new DataInputStream(
+                    new ByteArrayInputStream(log, in.position(), length))) {
+                while (records.available() > 0) {
+                    byte kind = records.readByte();
+                    File file = new File(records.readUTF());
+                    byte[] contents = null;
+                    if (kind == WRITE) {
+                        contents = new byte[records.readInt()];
+                        records.readFully(contents);
+                    }
+                    state.put(file, contents);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            end = in.position() + length + Long.BYTES;
+            in.position(end);
+        }
+        return end;
+    }
+
+    /** Returns the CRC-32 of LENGTH bytes of BYTES from START on. */
+    private static long checksum(byte[] bytes, int start, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, start, length);
+        return crc.getValue();
+    }
+
+    /** Function that replaces a file by a temporary file renamed over
+     * it, so that it is never seen half written.
+     * @param file the file.
+     * @param contents its new contents, or null to delete it.
+     */
+    private static void apply(File file, byte[] contents) {
+        if (contents == null) {
+            file.delete();
+            return;
+        }
+        File temp = Blob.newTempFile();
+        Utils.writeContents(temp, contents);
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that syncs files, in parallel, and then the directories
+     * holding them.
+     * @param files the files; those that no longer exist are skipped.
+     */
+    private static void syncAll(Set<File> files) {
+        Set<File> dirs = new HashSet<>();
+        for (File file : files) {
+            dirs.add(file.getParentFile());
+        }
+        files.parallelStream().filter(File::isFile)
+            .forEach(Journal::sync);
+        dirs.parallelStream().filter(File::isDirectory)
+            .forEach(Journal::sync);
+    }
+
+    /** Function that syncs a file or directory to disk. Directories
+     * cannot be opened on every system; there they are not synced.
+     * @param file the file or directory.
+     */
+    static void sync(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Function that cuts the journal to its first LENGTH bytes and syncs
+     * it. */
+    private static void truncate(long length) {
+        try (FileChannel out = FileChannel.open(JOURNAL_FILE.toPath(),
+                StandardOpenOption.WRITE)) {
+            out.truncate(length);
+            out.force(true);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Kind of a record giving a file new contents.*/
+    private static final byte WRITE = 'w';
+    /** Kind of a record deleting a file.*/
+    private static final byte DELETE = 'd';
+
+    /** The most bytes of new objects copied into a transaction; a
+     * command that stored more syncs them instead.*/
+    static final int INLINE_LIMIT = 1 << 20;
+    /** The size past which the journal is emptied by a checkpoint.*/
+    static final int CHECKPOINT_SIZE = 4 << 20;
+
+    /** The journal file.*/
+    static final File JOURNAL_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "journal");
+    /** The file recording how much of the journal was applied.*/
+    static final File APPLIED_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "journal.applied");
+
+    /** The writes of the running command, by file: the new contents, or
+     * null for a file deleted.*/
+    private static final Map<File, byte[]> pending = new LinkedHashMap<>();
+    /** The writes pending when the running command began.*/
+    private static final Map<File, byte[]> savepoint = new LinkedHashMap<>();
+    /** What the running command adds to the files only appended to, in
+     * order.*/
+    private static final List<Map.Entry<File, byte[]>> appends =
+        new ArrayList<>();
+    /** The number of appends when the running command began.*/
+    private static int appendsAtBegin;
+    /** The object files stored since the last commit.*/
+    private static final Set<File> objects = new LinkedHashSet<>();
+    /** The start time of process 1 (see bootStamp).*/
+    private static final long BOOT_STAMP = bootStamp();
+    /** Whether the journal was replayed.*/
+    private static boolean recovered;
+}
@@ -0,0 +1,90 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/** This class represents a store made of two: objects are written to
+ * and deleted from the top store, and looked for in it and then in the
+ * bottom source. A repository's stores are loose objects over the pack.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class LayeredStore implements ObjectStore {
+
+    /** LayeredStore Constructor.
+     * @param topStore the store written to and searched first.
+     * @param bottomSource the source searched next.
+     */
+    LayeredStore(ObjectStore topStore, ObjectSource bottomSource) {
+        top = topStore;
+        bottom = bottomSource;
+    }
+
+    @Override
+    public boolean has(String id) {
+        return top.has(id) || bottom.has(id);
+    }
+
+    @Override
+    public InputStream stream(String id) throws IOException {
+        InputStream result = top.stream(id);
+        return result != null ? result : bottom.stream(id);
+    }
+
+    @Override
+    public boolean transferTo(String id, long position,
+                              WritableByteChannel out) throws IOException {
+        return top.transferTo(id, position, out)
+            || bottom.transferTo(id, position, out);
+    }
+
+    @Override
+    public byte[] get(String id) {
+        byte[] result = top.get(id);
+        return result != null ? result : bottom.get(id);
+    }
+
+    @Override
+    public void put(String id, byte[] contents) {
+        top.put(id, contents);
+    }
+
+    @Override
+    public void put(String id, File file) {
+        top.put(id, file);
+    }
+
+    @Override
+    public List<String> ids() {
+        Set<String> result = new LinkedHashSet<>(top.ids());
+        result.addAll(bottom.ids());
+        return new ArrayList<>(result);
+    }
+
+    /** Function that gives the ids of the top store and then those of
+     * the bottom source to ACTION; an object in both is given twice.
+     * @param action what to do with each id.
+     */
+    @Override
+    public void forEachId(Consumer<String> action) {
+        top.forEachId(action);
+        bottom.forEachId(action);
+    }
+
+    @Override
+    public long delete(String id) {
+        return top.delete(id);
+    }
+
+    /** The store written to and searched first.*/
+    private final ObjectStore top;
+    /** The source searched next.*/
+    private final ObjectSource bottom;
+}
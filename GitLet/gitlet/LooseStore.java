@@ -0,0 +1,156 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** This class represents a store of loose objects: one file per object
+ * in a directory. The files are spread over up to 256 subdirectories
+ * named by the first two hex digits of their ids (the file being named
+ * by the rest), so that no directory grows too large to list or search
+ * quickly. Objects written by older versions, directly in the
+ * directory under their full id, are still found; repack moves them
+ * into the pack with the others.
+ *
+ * An object is written to a temporary file in the directory and then
+ * renamed into place, so a reader never sees it half written. It is
+ * not synced to disk there: the journal makes the objects a command
+ * stored durable together when the command ends (see Journal).
+ *  @author Hiva Mohammadzadeh
+ */
+
+class LooseStore implements ObjectStore {
+
+    /** LooseStore Constructor.
+     * @param directory the directory of the objects.
+     */
+    LooseStore(File directory) {
+        dir = directory;
+    }
+
+    @Override
+    public boolean has(String id) {
+        return locate(id) != null;
+    }
+
+    @Override
+    public InputStream stream(String id) throws IOException {
+        File file = locate(id);
+        return file == null ? null : Files.newInputStream(file.toPath());
+    }
+
+    @Override
+    public boolean transferTo(String id, long position,
+                              WritableByteChannel out) throws IOException {
+        File file = locate(id);
+        if (file == null) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath())) {
+            long size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] get(String id) {
+        File file = locate(id);
+        return file == null ? null : Utils.readContents(file);
+    }
+
+    @Override
+    public void put(String id, byte[] contents) {
+        File temp;
+        try {
+            dir.mkdirs();
+            temp = Files.createTempFile(dir.toPath(), "tmp", null).toFile();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Utils.writeContents(temp, contents);
+        put(id, temp);
+    }
+
+    @Override
+    public void put(String id, File file) {
+        File target = fileOf(id);
+        try {
+            Files.createDirectories(target.getParentFile().toPath());
+            Files.move(file.toPath(), target.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Journal.added(target);
+        } catch (IOException excp) {
+            file.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    @Override
+    public List<String> ids() {
+        List<String> result = new ArrayList<>();
+        forEachId(result::add);
+        return result;
+    }
+
+    @Override
+    public void forEachId(Consumer<String> action) {
+        File[] entries = dir.listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            String name = entry.getName();
+            if (entry.isDirectory() && name.length() == SHARD_LENGTH) {
+                List<String> names = Utils.plainFilenamesIn(entry);
+                for (String rest : names) {
+                    action.accept(name + rest);
+                }
+            } else if (entry.isFile() && !name.startsWith("tmp")) {
+                action.accept(name);
+            }
+        }
+    }
+
+    @Override
+    public long delete(String id) {
+        File file = locate(id);
+        if (file == null) {
+            return 0;
+        }
+        long size = file.length();
+        return file.delete() ? size : 0;
+    }
+
+    /** Returns the file of the object named ID, or null if it is not
+     *  stored. */
+    private File locate(String id) {
+        File file = fileOf(id);
+        if (file.isFile()) {
+            return file;
+        }
+        file = new File(dir, id);
+        return file.isFile() ? file : null;
+    }
+
+    /** Returns the file an object named ID is written to. */
+    private File fileOf(String id) {
+        return Utils.join(dir, id.substring(0, SHARD_LENGTH),
+                id.substring(SHARD_LENGTH));
+    }
+
+    /** Number of hex digits of an id naming its subdirectory.*/
+    private static final int SHARD_LENGTH = 2;
+
+    /** The directory of the objects.*/
+    private final File dir;
+}
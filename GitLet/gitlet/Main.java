@@ -7,10 +7,55 @@ package gitlet;
 public class Main {
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      * <COMMAND> <OPERAND> ....
+     * If a Gitlet server is running for the repository, the command is
+     * sent to it instead.
      * */
     public static void main(String... args) {
+        if (args.length > 0 && Server.forward(args)) {
+            return;
+        }
+        try {
+            run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return;
+        }
+        if (Boolean.getBoolean("gitlet.stats")) {
+            System.err.println(Commit.getCache().stats());
+        }
+    }
+
+    /** Function that runs one command. User errors are reported by
+     * throwing a GitletException whose message is the error message.
+     * The state the command wrote is committed to the journal when it
+     * ends, and dropped if it fails (see Journal). Used by main and by
+     * the server.
+     * @param args the command and its operands.
+     */
+    static void run(String... args) {
         checkArgs(args);
-        if (args[0].equals("init") && args.length == 1) {
+        if (Gitlet.GITLET_DIRECTORY.isDirectory()) {
+            Journal.recover();
+        }
+        Journal.begin();
+        try {
+            dispatch(args);
+        } catch (RuntimeException excp) {
+            Journal.abort();
+            throw excp;
+        }
+        if (!Gitlet.isDeferring()) {
+            StatIndex.saveIfChanged();
+            Journal.commit();
+        }
+    }
+
+    /** Function that runs the given command.
+     * @param args the command and its operands.
+     */
+    private static void dispatch(String... args) {
+        if (args[0].equals("init") && (args.length == 1
+            || args.length == 2 && args[1].startsWith("--hash="))) {
             Gitlet gitlet = new Gitlet();
             gitlet.init(args);
         } else if (args[0].equals("add")) {
@@ -61,9 +106,25 @@ public class Main {
             checkGitRepository();
             Gitlet gitlet = Gitlet.getGitlet();
             gitlet.merge(args);
+        } else if (args[0].equals("repack")) {
+            checkGitRepository();
+            Gitlet gitlet = Gitlet.getGitlet();
+            gitlet.repack(args);
+        } else if (args[0].equals("gc")) {
+            checkGitRepository();
+            Gitlet gitlet = Gitlet.getGitlet();
+            gitlet.gc(args);
+        } else if (args[0].equals("batch")) {
+            Batch.run(args);
+        } else if (args[0].equals("serve")) {
+            checkGitRepository();
+            Server.serve(args);
+        } else if (args[0].equals("config")) {
+            checkGitRepository();
+            Gitlet gitlet = Gitlet.getGitlet();
+            gitlet.config(args);
         } else {
-            System.out.println("No command with that name exists.");
-            System.exit(0);
+            throw new GitletException("No command with that name exists.");
         }
     }
 
@@ -72,8 +133,7 @@ public class Main {
      */
     public static void checkArgs(String[] args) {
         if (args.length == 0) {
-            System.out.println("Please enter a command.");
-            System.exit(0);
+            throw new GitletException("Please enter a command.");
         }
     }
 
@@ -82,8 +142,8 @@ public class Main {
      * */
     public static void checkGitRepository() {
         if (!Utils.join(Gitlet.CWD, ".gitlet").exists()) {
-            System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            throw new GitletException(
+                "Not in an initialized Gitlet directory.");
         }
     }
 }
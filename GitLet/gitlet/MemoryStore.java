@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** This class represents a store keeping its objects in the heap. It
+ * does no I/O, so it is used by unit tests that should not depend on
+ * the file system.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class MemoryStore implements ObjectStore {
+
+    @Override
+    public boolean has(String id) {
+        return objects.containsKey(id);
+    }
+
+    @Override
+    public InputStream stream(String id) {
+        byte[] stored = objects.get(id);
+        return stored == null ? null : new ByteArrayInputStream(stored);
+    }
+
+    @Override
+    public byte[] get(String id) {
+        return objects.get(id);
+    }
+
+    @Override
+    public void put(String id, byte[] contents) {
+        objects.put(id, contents);
+    }
+
+    @Override
+    public List<String> ids() {
+        return new ArrayList<>(objects.keySet());
+    }
+
+    @Override
+    public long delete(String id) {
+        byte[] stored = objects.remove(id);
+        return stored == null ? 0 : stored.length;
+    }
+
+    /** The stored bytes of each object, by id.*/
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+}
@@ -0,0 +1,170 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/** This class represents the inverted index of commit messages used by
+ * find. For every distinct message, .gitlet/messages holds a file named
+ * by the SHA-1 of the message that lists (in binary) the ids of the
+ * commits with that message; .gitlet/words does the same for every word
+ * of a message, lowercased. Both are appended to when a commit is made,
+ * so a search reads only the lists of the words it looks for, and takes
+ * time proportional to their length rather than to the history.
+ * The index is rebuilt from the commits if it is missing.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class MessageIndex {
+
+    /** Function that finds the commits with exactly the given message.
+     * @param message the commit message.
+     * @return the ids of the commits, oldest first.
+     */
+    static List<String> withMessage(String message) {
+        ensureBuilt();
+        return readPostings(Utils.join(MESSAGES_DIRECTORY,
+                Utils.sha1(message)));
+    }
+
+    /** Function that finds the commits whose messages contain all of the
+     * given words, ignoring case.
+     * @param words the words to look for.
+     * @return the ids of the commits, oldest first.
+     */
+    static List<String> withWords(List<String> words) {
+        ensureBuilt();
+        List<List<String>> postings = new ArrayList<>();
+        for (String word : words) {
+            for (String token : tokens(word)) {
+                postings.add(readPostings(Utils.join(WORDS_DIRECTORY,
+                        Utils.sha1(token))));
+            }
+        }
+        if (postings.isEmpty()) {
+            return new ArrayList<>();
+        }
+        postings.sort((a, b) -> a.size() - b.size());
+        Set<String> result = new LinkedHashSet<>(postings.get(0));
+        for (int k = 1; k < postings.size() && !result.isEmpty(); k += 1) {
+            result.retainAll(new LinkedHashSet<>(postings.get(k)));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Function that adds a new commit to the index.
+     * @param commitID the id of the new commit.
+     * @param message its message.
+     */
+    static synchronized void add(String commitID, String message) {
+        if (!MESSAGES_DIRECTORY.isDirectory()) {
+            rebuild();
+            return;
+        }
+        index(commitID, message);
+    }
+
+    /** Function that writes the index anew from all the commits in the
+     * repository.
+     */
+    static synchronized void rebuild() {
+        for (File dir : new File[] {MESSAGES_DIRECTORY, WORDS_DIRECTORY}) {
+            dir.mkdir();
+            for (String name : Utils.plainFilenamesIn(dir)) {
+                Utils.join(dir, name).delete();
+            }
+        }
+        for (String commitID : Gitlet.allCommitIDs()) {
+            index(commitID, Commit.getCommit(commitID).getTheMessage());
+        }
+    }
+
+    /** Function that builds the index if it does not exist yet. */
+    private static synchronized void ensureBuilt() {
+        if (!MESSAGES_DIRECTORY.isDirectory()) {
+            rebuild();
+        }
+    }
+
+    /** Function that appends COMMITID to the lists of its message and of
+     * each of the message's words.
+     * @param commitID the id of the commit.
+     * @param message its message.
+     */
+    private static void index(String commitID, String message) {
+        byte[] id = Pack.fromHex(commitID);
+        appendPosting(Utils.join(MESSAGES_DIRECTORY, Utils.sha1(message)),
+                id);
+        for (String token : tokens(message)) {
+            appendPosting(Utils.join(WORDS_DIRECTORY, Utils.sha1(token)),
+                    id);
+        }
+    }
+
+    /** Function that returns the distinct words of TEXT, lowercased.
+     * A word is a maximal run of letters and digits.
+     * @param text the text to split.
+     * @return the words, in order of first appearance.
+     */
+    static Set<String> tokens(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String token
+                 : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (!token.isEmpty()) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    /** Function that appends a binary id to a list of ids.
+     * @param postings the file holding the list.
+     * @param id the id to append.
+     */
+    private static void appendPosting(File postings, byte[] id) {
+        try (FileChannel out = FileChannel.open(postings.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(id);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that reads a list of ids, each once even if it was
+     * appended more than once (e.g. by an index cut short and redone).
+     * @param postings the file holding the list.
+     * @return the ids, in the order they were first added, or an empty
+     * list if the file does not exist.
+     */
+    private static List<String> readPostings(File postings) {
+        Set<String> result = new LinkedHashSet<>();
+        if (postings.isFile()) {
+            byte[] ids = Utils.readContents(postings);
+            int idLength = Utils.idBytes();
+            for (int k = 0; k + idLength <= ids.length; k += idLength) {
+                result.add(Utils.toHex(
+                        Arrays.copyOfRange(ids, k, k + idLength)));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Directory holding the list of commits of each message.*/
+    static final File MESSAGES_DIRECTORY =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "messages");
+    /** Directory holding the list of commits of each word.*/
+    static final File WORDS_DIRECTORY =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "words");
+}
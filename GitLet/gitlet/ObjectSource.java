@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** This interface represents a source of objects of one kind (blobs,
+ * trees or commits) that can only be read: their stored bytes, by id.
+ * An ObjectStore can also be written to. The pack is only a source (see
+ * PackStore), since only repack writes it.
+ *  @author Hiva Mohammadzadeh
+ */
+
+interface ObjectSource {
+
+    /** Returns true iff an object named ID is stored. */
+    boolean has(String id);
+
+    /** Function that opens a stream over the stored bytes of an object.
+     * @param id the id of the object.
+     * @return the stream, or null if no such object is stored.
+     */
+    InputStream stream(String id) throws IOException;
+
+    /** Function that writes the stored bytes of an object to OUT from
+     * the given position on, without going through the heap where the
+     * source allows it.
+     * @param id the id of the object.
+     * @param position the number of stored bytes to skip.
+     * @param out the channel to write to.
+     * @return false, having written nothing, if no such object is stored.
+     */
+    default boolean transferTo(String id, long position,
+                               WritableByteChannel out) throws IOException {
+        try (InputStream in = stream(id)) {
+            if (in == null) {
+                return false;
+            }
+            in.skipNBytes(position);
+            byte[] buffer = new byte[Blob.BUFFER_SIZE];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Function that reads the stored bytes of an object.
+     * @param id the id of the object.
+     * @return the bytes, or null if no such object is stored.
+     */
+    default byte[] get(String id) {
+        try (InputStream in = stream(id)) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the ids of all stored objects. */
+    List<String> ids();
+
+    /** Function that gives the id of every stored object to ACTION, one
+     * at a time, without listing them all first where the source allows
+     * it.
+     * @param action what to do with each id.
+     */
+    default void forEachId(Consumer<String> action) {
+        ids().forEach(action);
+    }
+}
@@ -0,0 +1,43 @@
+package gitlet;
+
+import java.io.File;
+
+/** This interface represents a store of objects of one kind (blobs,
+ * trees or commits): a source of their stored bytes, by id, that can
+ * also be written to. Commands only reach objects through the stores
+ * Gitlet holds (Gitlet.blobs, Gitlet.trees and Gitlet.commits), so where
+ * and how objects are kept can change without touching them.
+ *
+ * The stores of a repository are LayeredStores of a LooseStore (one
+ * file per object under .gitlet/Blob, Tree or Commit) over a PackStore
+ * (the objects of that kind in the pack, which can only be read). A
+ * MemoryStore keeps objects in the heap, for unit tests.
+ *  @author Hiva Mohammadzadeh
+ */
+
+interface ObjectStore extends ObjectSource {
+
+    /** Function that stores an object, replacing any object with the
+     * same id.
+     * @param id the id of the object.
+     * @param contents its stored bytes.
+     */
+    void put(String id, byte[] contents);
+
+    /** Function that stores an object whose stored bytes were written to
+     * a temporary file, which is moved into the store (or deleted).
+     * @param id the id of the object.
+     * @param file the temporary file.
+     */
+    default void put(String id, File file) {
+        put(id, Utils.readContents(file));
+        file.delete();
+    }
+
+    /** Function that deletes an object.
+     * @param id the id of the object.
+     * @return the number of bytes freed: 0 if the object was not stored
+     * here.
+     */
+    long delete(String id);
+}
@@ -0,0 +1,516 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/** This class represents the pack: a single file holding many blobs,
+ * trees and commits back to back, together with an index used to find
+ * them. Both files are memory-mapped; a lookup binary-searches the index
+ * (narrowed down by a 256-entry fanout table on the first byte of the
+ * id) and an object is read as a slice of the mapped pack, without
+ * copying the pack into memory.
+ *
+ * The pack (.gitlet/pack/pack-N.pack) is the magic "PACK", a version
+ * and the number of objects, followed by the objects exactly as they
+ * are stored loose. The index (.gitlet/pack/pack-N.idx) is the magic
+ * "PIDX", a version, the length in bytes of an id and the number of
+ * objects, then the fanout table (256 ints, entry i being the number of
+ * ids whose first byte is at most i), the sorted binary ids, the offsets
+ * (longs) and lengths (ints) of the objects in the pack, and one kind
+ * byte per object (BLOB, COMMIT or TREE).
+ *
+ * Loose objects are moved into the pack by the repack command. Since a
+ * pack is mapped as a whole, it is limited to 2GB. Every repack writes
+ * a pack and an index named by a new generation N, one more than the
+ * last, and the index is renamed into place last: the current pack is
+ * the one of highest generation that has an index, so a repack cut
+ * short leaves the previous pair in use. Older pairs are deleted once
+ * the new one is on disk.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Pack {
+
+    /** Kind byte of a packed blob.*/
+    static final byte BLOB = 'b';
+    /** Kind byte of a packed commit.*/
+    static final byte COMMIT = 'c';
+    /** Kind byte of a packed tree.*/
+    static final byte TREE = 't';
+
+    /** Pack Constructor: a pack whose index and objects are mapped in
+     * INDEX and OBJECTS.
+     * @param index the mapped index file.
+     * @param objects the mapped pack file.
+     */
+    private Pack(MappedByteBuffer index, MappedByteBuffer objects) {
+        if (index.getInt(0) != INDEX_MAGIC || index.getInt(4) != VERSION
+                || objects.getInt(0) != PACK_MAGIC) {
+            throw new IllegalArgumentException("corrupted pack");
+        }
+        idx = index;
+        pack = objects;
+        idLength = idx.getInt(8);
+        count = idx.getInt(12);
+        idsStart = HEADER_SIZE + 4 * FANOUT_SIZE;
+        offsetsStart = idsStart + count * idLength;
+        lengthsStart = offsetsStart + count * 8;
+        kindsStart = lengthsStart + count * 4;
+    }
+
+    /** Function that returns the repository's pack, mapping it the first
+     * time it is asked for.
+     * @return the pack, or null if the repository has not been packed.
+     */
+    static synchronized Pack getPack() {
+        if (current == null) {
+            int generation = generation();
+            if (generation > 0) {
+                current = new Pack(map(indexFile(generation)),
+                    map(packFile(generation)));
+            }
+        }
+        return current;
+    }
+
+    /** Function that finds the generation of the current pack.
+     * @return the highest generation that has both a pack and an index,
+     * or 0 if there is none.
+     */
+    private static int generation() {
+        int result = 0;
+        List<String> names = Utils.plainFilenamesIn(PACK_DIRECTORY);
+        if (names == null) {
+            return result;
+        }
+        for (String name : names) {
+            if (!name.startsWith(PREFIX) || !name.endsWith(INDEX_SUFFIX)) {
+                continue;
+            }
+            String number = name.substring(PREFIX.length(),
+                    name.length() - INDEX_SUFFIX.length());
+            try {
+                int generation = Integer.parseInt(number);
+                if (generation > result && packFile(generation).isFile()) {
+                    result = generation;
+                }
+            } catch (NumberFormatException excp) {
+                continue;
+            }
+        }
+        return result;
+    }
+
+    /** Returns the pack file of generation GENERATION. */
+    private static File packFile(int generation) {
+        return Utils.join(PACK_DIRECTORY, PREFIX + generation + PACK_SUFFIX);
+    }
+
+    /** Returns the index file of generation GENERATION. */
+    private static File indexFile(int generation) {
+        return Utils.join(PACK_DIRECTORY, PREFIX + generation + INDEX_SUFFIX);
+    }
+
+    /** Function that maps the whole of FILE read-only.
+     * @param file the file to map.
+     * @return the mapped buffer.
+     */
+    private static MappedByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the number of objects in the pack. */
+    int size() {
+        return count;
+    }
+
+    /** Returns true iff the pack holds an object named ID. */
+    boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the stored bytes of the object named ID as a read-only slice
+     *  of the mapped pack, or null if it is not in the pack. */
+    ByteBuffer get(String id) {
+        int k = find(id);
+        if (k < 0) {
+            return null;
+        }
+        return slice(k);
+    }
+
+    /** Returns a stream over the stored bytes of the object named ID, or
+     *  null if it is not in the pack. */
+    InputStream open(String id) {
+        ByteBuffer buffer = get(id);
+        if (buffer == null) {
+            return null;
+        }
+        return new BufferInputStream(buffer);
+    }
+
+    /** Returns the ids of all packed objects of kind KIND, in order. */
+    List<String> ids(byte kind) {
+        List<String> result = new ArrayList<>();
+        forEachId(kind, result::add);
+        return result;
+    }
+
+    /** Gives the id of every packed object of kind KIND to ACTION, in
+     *  order. */
+    void forEachId(byte kind, Consumer<String> action) {
+        for (int k = 0; k < count; k += 1) {
+            if (idx.get(kindsStart + k) == kind) {
+                action.accept(idAt(k));
+            }
+        }
+    }
+
+    /** Returns the stored bytes of the Kth object of the pack. */
+    private ByteBuffer slice(int k) {
+        int offset = (int) idx.getLong(offsetsStart + 8 * k);
+        int length = idx.getInt(lengthsStart + 4 * k);
+        return pack.duplicate().position(offset).limit(offset + length)
+                .slice().asReadOnlyBuffer();
+    }
+
+    /** Returns the id of the Kth object of the pack, as hexadecimal. */
+    private String idAt(int k) {
+        byte[] id = new byte[idLength];
+        idx.get(idsStart + k * idLength, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the position of ID in the index, or -1 if it is not there.
+     *  Only the ids sharing ID's first byte, as given by the fanout table,
+     *  are binary searched. */
+    private int find(String id) {
+        if (id.length() != 2 * idLength) {
+            return -1;
+        }
+        byte[] key = fromHex(id);
+        if (key == null) {
+            return -1;
+        }
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        int hi = fanout(first) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns entry I of the fanout table. */
+    private int fanout(int i) {
+        return idx.getInt(HEADER_SIZE + 4 * i);
+    }
+
+    /** Compares the Kth id of the index with KEY, as unsigned bytes. */
+    private int compareAt(int k, byte[] key) {
+        int start = idsStart + k * idLength;
+        for (int i = 0; i < idLength; i += 1) {
+            int cmp = (idx.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the bytes denoted by the hexadecimal numeral HEX, or null if
+     *  HEX is not a valid numeral. */
+    static byte[] fromHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            return null;
+        }
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            result[i] = (byte) (hi << 4 | lo);
+        }
+        return result;
+    }
+
+    /** Function that moves every loose blob, tree and commit, together
+     * with the contents of the current pack, into a new pack and index,
+     * and then deletes the loose objects that were packed.
+     * The new files are written as the next generation, synced and
+     * renamed into place, index last, so a failed repack leaves the
+     * previous pack in use; then the older packs are deleted. No loose
+     * object is deleted before the pack holding it is on disk.
+     * @return the number of objects in the new pack.
+     */
+    static int repack() {
+        return repack(id -> true);
+    }
+
+    /** Function that repacks like repack(), except that the objects of
+     * the current pack that KEEP rejects are left out of the new pack.
+     * Used by gc to drop unreachable packed objects.
+     * @param keep tells whether a packed object, by id, is kept.
+     * @return the number of objects in the new pack.
+     */
+    static int repack(Predicate<String> keep) {
+        Pack old = getPack();
+        TreeMap<String, Byte> kinds = new TreeMap<>();
+        TreeMap<String, ObjectStore> loose = new TreeMap<>();
+        if (old != null) {
+            for (int k = 0; k < old.count; k += 1) {
+                if (keep.test(old.idAt(k))) {
+                    kinds.put(old.idAt(k), old.idx.get(old.kindsStart + k));
+                }
+            }
+        }
+        collectLoose(Gitlet.LOOSE_BLOBS, BLOB, kinds, loose);
+        collectLoose(Gitlet.LOOSE_COMMITS, COMMIT, kinds, loose);
+        collectLoose(Gitlet.LOOSE_TREES, TREE, kinds, loose);
+        int idLength = kinds.isEmpty() ? Utils.idBytes()
+            : kinds.firstKey().length() / 2;
+
+        PACK_DIRECTORY.mkdir();
+        File packTemp = Blob.newTempFile();
+        File indexTemp = Blob.newTempFile();
+        int n = kinds.size();
+        long[] offsets = new long[n];
+        int[] lengths = new int[n];
+        try (FileChannel out = FileChannel.open(packTemp.toPath(),
+                StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putInt(PACK_MAGIC).putInt(VERSION).putInt(n).flip();
+            writeFully(out, header);
+            int k = 0;
+            for (String id : kinds.keySet()) {
+                offsets[k] = out.position();
+                ObjectStore store = loose.get(id);
+                if (store != null) {
+                    store.transferTo(id, 0, out);
+                } else {
+                    writeFully(out, old.get(id));
+                }
+                long length = out.position() - offsets[k];
+                if (out.position() > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("pack is too large");
+                }
+                lengths[k] = (int) length;
+                k += 1;
+            }
+        } catch (IOException excp) {
+            packTemp.delete();
+            indexTemp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        writeIndex(indexTemp, kinds, idLength, offsets, lengths);
+        Journal.sync(packTemp);
+        Journal.sync(indexTemp);
+
+        int generation = generation() + 1;
+        File packFile = packFile(generation);
+        File indexFile = indexFile(generation);
+        try {
+            Files.move(packTemp.toPath(), packFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(indexTemp.toPath(), indexFile.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            packTemp.delete();
+            indexTemp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Journal.sync(PACK_DIRECTORY);
+        current = null;
+        for (String suffix : new String[] {INDEX_SUFFIX, PACK_SUFFIX}) {
+            for (String name : Utils.plainFilenamesIn(PACK_DIRECTORY)) {
+                if (name.endsWith(suffix) && !name.equals(packFile.getName())
+                        && !name.equals(indexFile.getName())) {
+                    Utils.join(PACK_DIRECTORY, name).delete();
+                }
+            }
+        }
+        Journal.checkpoint();
+        for (Map.Entry<String, ObjectStore> object : loose.entrySet()) {
+            object.getValue().delete(object.getKey());
+        }
+        return n;
+    }
+
+    /** Function that adds the objects of STORE, of kind KIND, to KINDS
+     * and LOOSE.
+     * @param store the store of the loose objects.
+     * @param kind the kind of the objects in STORE.
+     * @param kinds map from id to kind of every object to pack.
+     * @param loose map from id to store of every loose object to pack.
+     */
+    private static void collectLoose(LooseStore store, byte kind,
+                                     Map<String, Byte> kinds,
+                                     Map<String, ObjectStore> loose) {
+        for (String id : store.ids()) {
+            kinds.put(id, kind);
+            loose.put(id, store);
+        }
+    }
+
+    /** Function that writes the index of a pack to FILE.
+     * @param file the file to write.
+     * @param kinds map from id to kind of every packed object, in order.
+     * @param idLength the length of an id in bytes.
+     * @param offsets the offsets of the objects, in the same order.
+     * @param lengths the lengths of the objects, in the same order.
+     */
+    private static void writeIndex(File file, TreeMap<String, Byte> kinds,
+                                   int idLength, long[] offsets,
+                                   int[] lengths) {
+        int[] fanout = new int[FANOUT_SIZE];
+        for (String id : kinds.keySet()) {
+            fanout[Character.digit(id.charAt(0), 16) << 4
+                    | Character.digit(id.charAt(1), 16)] += 1;
+        }
+        for (int i = 1; i < FANOUT_SIZE; i += 1) {
+            fanout[i] += fanout[i - 1];
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file.toPath()),
+                        Blob.BUFFER_SIZE))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(idLength);
+            out.writeInt(kinds.size());
+            for (int count : fanout) {
+                out.writeInt(count);
+            }
+            for (String id : kinds.keySet()) {
+                out.write(fromHex(id));
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            for (int length : lengths) {
+                out.writeInt(length);
+            }
+            for (byte kind : kinds.values()) {
+                out.writeByte(kind);
+            }
+        } catch (IOException excp) {
+            file.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that writes all of BUFFER to OUT.
+     * @param out the channel to write to.
+     * @param buffer the bytes to write.
+     */
+    private static void writeFully(FileChannel out, ByteBuffer buffer)
+        throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /** An InputStream reading the remaining bytes of a ByteBuffer. */
+    private static class BufferInputStream extends InputStream {
+
+        /** A stream over the remaining bytes of BUFFER.
+         * @param buffer the bytes to read.
+         */
+        BufferInputStream(ByteBuffer buffer) {
+            source = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            return source.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, source.remaining());
+            source.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return source.remaining();
+        }
+
+        /** The bytes being read.*/
+        private final ByteBuffer source;
+    }
+
+    /** Directory holding the pack and its index.*/
+    static final File PACK_DIRECTORY =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "pack");
+    /** Start of the names of the packs and indexes.*/
+    private static final String PREFIX = "pack-";
+    /** End of the name of a pack.*/
+    private static final String PACK_SUFFIX = ".pack";
+    /** End of the name of an index.*/
+    private static final String INDEX_SUFFIX = ".idx";
+
+    /** Magic number at the start of a pack ("PACK").*/
+    private static final int PACK_MAGIC = 0x5041434b;
+    /** Magic number at the start of an index ("PIDX").*/
+    private static final int INDEX_MAGIC = 0x50494458;
+    /** Version of the pack and index formats.*/
+    private static final int VERSION = 1;
+    /** Size of the index header, in bytes.*/
+    private static final int HEADER_SIZE = 16;
+    /** Number of entries of the fanout table.*/
+    private static final int FANOUT_SIZE = 256;
+
+    /** The repository's pack, once mapped.*/
+    private static Pack current;
+
+    /** The mapped index.*/
+    private final MappedByteBuffer idx;
+    /** The mapped pack.*/
+    private final MappedByteBuffer pack;
+    /** Length of an id, in bytes.*/
+    private final int idLength;
+    /** Number of objects in the pack.*/
+    private final int count;
+    /** Positions in the index of the ids, offsets, lengths and kinds.*/
+    private final int idsStart, offsetsStart, lengthsStart, kindsStart;
+}
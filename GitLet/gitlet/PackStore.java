@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** This class represents the objects of one kind in the pack, as a
+ * source. The pack is only written by repack, so objects can be read
+ * from it but not put in it or deleted from it; they are read as slices
+ * of the mapped pack (see Pack).
+ *  @author Hiva Mohammadzadeh
+ */
+
+class PackStore implements ObjectSource {
+
+    /** PackStore Constructor.
+     * @param objectKind the kind of the objects (Pack.BLOB, Pack.TREE or
+     *                   Pack.COMMIT).
+     */
+    PackStore(byte objectKind) {
+        kind = objectKind;
+    }
+
+    @Override
+    public boolean has(String id) {
+        Pack pack = Pack.getPack();
+        return pack != null && pack.contains(id);
+    }
+
+    @Override
+    public InputStream stream(String id) {
+        Pack pack = Pack.getPack();
+        return pack == null ? null : pack.open(id);
+    }
+
+    @Override
+    public boolean transferTo(String id, long position,
+                              WritableByteChannel out) throws IOException {
+        ByteBuffer stored = slice(id);
+        if (stored == null) {
+            return false;
+        }
+        stored.position((int) position);
+        while (stored.hasRemaining()) {
+            out.write(stored);
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] get(String id) {
+        ByteBuffer stored = slice(id);
+        if (stored == null) {
+            return null;
+        }
+        byte[] result = new byte[stored.remaining()];
+        stored.get(result);
+        return result;
+    }
+
+    @Override
+    public List<String> ids() {
+        Pack pack = Pack.getPack();
+        return pack == null ? new ArrayList<>() : pack.ids(kind);
+    }
+
+    @Override
+    public void forEachId(Consumer<String> action) {
+        Pack pack = Pack.getPack();
+        if (pack != null) {
+            pack.forEachId(kind, action);
+        }
+    }
+
+    /** Returns the stored bytes of the object named ID, as a slice of
+     *  the mapped pack, or null if it is not packed. */
+    private ByteBuffer slice(String id) {
+        Pack pack = Pack.getPack();
+        return pack == null ? null : pack.get(id);
+    }
+
+    /** The kind of the objects.*/
+    private final byte kind;
+}
@@ -0,0 +1,117 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/** This class represents the reflog: the list of every commit a branch
+ * was made to point to, and when. gc keeps the commits in recent entries
+ * even if no branch points to them any more, so that a commit left
+ * behind by reset or rm-branch can still be found for a while.
+ *
+ * .gitlet/reflog holds one fixed-width record per update of a branch:
+ * the time in seconds and the binary commit id. Records are added by
+ * writeBranch through the journal (see Journal.appendTo), so they reach
+ * the file only once the ref update does, and dropped by gc once they
+ * are older than the grace period (the gc.graceDays setting).
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Reflog {
+
+    /** Function that records that a branch now points to a commit.
+     * @param commitID the id of the commit.
+     */
+    static void add(String commitID) {
+        ByteBuffer record = ByteBuffer.allocate(recordSize());
+        record.putLong(System.currentTimeMillis() / 1000);
+        record.put(Pack.fromHex(commitID));
+        Journal.appendTo(REFLOG_FILE, record.array());
+    }
+
+    /** Function that returns the commits recorded after a given time.
+     * @param after the time, in seconds.
+     * @return the ids of the commits, oldest first.
+     */
+    static List<String> after(long after) {
+        List<String> result = new ArrayList<>();
+        ByteBuffer records = read();
+        byte[] id = new byte[Utils.idBytes()];
+        while (records.remaining() >= TIME_SIZE + id.length) {
+            long time = records.getLong();
+            records.get(id);
+            if (time > after) {
+                result.add(Utils.toHex(id));
+            }
+        }
+        return result;
+    }
+
+    /** Function that drops the records made at or before a given time.
+     * @param limit the time, in seconds.
+     */
+    static void expire(long limit) {
+        ByteBuffer records = ByteBuffer.wrap(stored());
+        ByteBuffer kept = ByteBuffer.allocate(records.remaining());
+        int recordSize = recordSize();
+        while (records.remaining() >= recordSize) {
+            int at = records.position();
+            records.position(at + recordSize);
+            if (records.getLong(at) > limit) {
+                kept.put(records.slice(at, recordSize));
+            }
+        }
+        kept.flip();
+        File temp = Blob.newTempFile();
+        try {
+            try (FileChannel out = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                while (kept.hasRemaining()) {
+                    out.write(kept);
+                }
+            }
+            Files.move(temp.toPath(), REFLOG_FILE.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the size of a record: time and id. */
+    private static int recordSize() {
+        return TIME_SIZE + Utils.idBytes();
+    }
+
+    /** Function that reads the reflog, including the records still to
+     * be added when the command commits.
+     * @return its records, or nothing if there is no reflog.
+     */
+    private static ByteBuffer read() {
+        byte[] stored = stored();
+        byte[] added = Journal.appended(REFLOG_FILE);
+        ByteBuffer result = ByteBuffer.allocate(stored.length + added.length);
+        return result.put(stored).put(added).flip();
+    }
+
+    /** Returns the records in the reflog file, or nothing if there is no
+     *  reflog. */
+    private static byte[] stored() {
+        return REFLOG_FILE.isFile() ? Utils.readContents(REFLOG_FILE)
+            : new byte[0];
+    }
+
+    /** The reflog file.*/
+    static final File REFLOG_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "reflog");
+
+    /** Size of the time at the start of a record.*/
+    private static final int TIME_SIZE = 8;
+}
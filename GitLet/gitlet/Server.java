@@ -0,0 +1,256 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** This class represents the Gitlet server: one JVM that stays up and
+ * runs the commands of a repository, so that a command pays neither for
+ * starting a JVM nor for reading again what the previous commands
+ * already read (commits, trees, the commit graph, the pack, the stat
+ * cache and the settings all stay cached between commands).
+ *
+ * "gitlet serve" listens on the Unix-domain socket .gitlet/daemon.sock.
+ * While it runs, Main forwards every command to it instead of running
+ * it (gitlet-client.sh does the same without starting a JVM at all). A
+ * request is the command's arguments, each followed by a NUL byte; the
+ * client then shuts down its side of the connection, and the server
+ * answers with the command's output and closes the connection.
+ * Reading a setting writes nothing, so such commands run concurrently.
+ * Any other command runs alone. That includes log, global-log, find and
+ * status: they may rebuild a side index or save the stat cache, and
+ * both go through the journal, whose pending state is shared by the
+ * whole JVM. "gitlet serve --stop" stops the server.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Server {
+
+    /** Function that sends a command to the repository's server, if one
+     * is running, and copies its output to the standard output.
+     * @param args the command and its operands.
+     * @return true iff a server ran the command.
+     */
+    static boolean forward(String[] args) {
+        if (!SOCKET_FILE.exists()) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(
+                    UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+        } catch (IOException excp) {
+            return false;
+        }
+        try (channel) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            for (String arg : args) {
+                request.write(arg.getBytes(StandardCharsets.UTF_8));
+                request.write(0);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(request.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.shutdownOutput();
+            Channels.newInputStream(channel).transferTo(System.out);
+            System.out.flush();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return true;
+    }
+
+    /** Function that runs the server until it is stopped. Each
+     * connection is handled on a thread of its own.
+     * @param args the command (serve) and its operands.
+     */
+    static void serve(String[] args) {
+        if (args.length == 2 && args[1].equals("--stop")) {
+            throw new GitletException("No Gitlet server is running.");
+        } else if (args.length != 1) {
+            throw new GitletException("Incorrect operands.");
+        }
+        ExecutorService workers = Executors.newCachedThreadPool();
+        try (ServerSocketChannel server =
+                 ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            Files.deleteIfExists(SOCKET_FILE.toPath());
+            server.bind(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+            listener = server;
+            System.out.println("Serving on " + SOCKET_FILE.getPath() + ".");
+            System.setOut(new PrintStream(new ThreadOutput(System.out)));
+            while (true) {
+                SocketChannel client = server.accept();
+                workers.execute(() -> handle(client));
+            }
+        } catch (AsynchronousCloseException excp) {
+            workers.shutdown();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            SOCKET_FILE.delete();
+        }
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Function that runs the command a client sent and sends back its
+     * output. The output of the command, printed on System.out, goes to
+     * the client of the thread running it.
+     * @param client the connection to the client.
+     */
+    private static void handle(SocketChannel client) {
+        try (client) {
+            String[] args = readRequest(client);
+            OutputStream out = new BufferedOutputStream(
+                    Channels.newOutputStream(client), OUTPUT_BUFFER_SIZE);
+            OUTPUT.set(out);
+            try {
+                run(args);
+            } finally {
+                System.out.flush();
+                OUTPUT.remove();
+                out.flush();
+            }
+        } catch (IOException excp) {
+            return;
+        }
+    }
+
+    /** Function that runs one command sent by a client, holding the
+     * read lock if it writes nothing (see isReadOnly) and the write lock
+     * otherwise.
+     * @param args the command and its operands.
+     */
+    private static void run(String[] args) throws IOException {
+        if (args.length > 0 && args[0].equals("serve")) {
+            if (args.length == 2 && args[1].equals("--stop")) {
+                System.out.println("Gitlet server stopped.");
+                listener.close();
+            } else {
+                System.out.println("A Gitlet server is already running.");
+            }
+            return;
+        }
+        if (args.length == 2 && args[0].equals("batch")
+            && args[1].equals("-")) {
+            System.out.println("The server cannot read a batch from the "
+                    + "standard input; give the script's file.");
+            return;
+        }
+        Lock lock = isReadOnly(args) ? LOCK.readLock() : LOCK.writeLock();
+        lock.lock();
+        try {
+            Main.run(args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        } catch (RuntimeException excp) {
+            System.out.println(excp);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Function that reads a request: NUL-terminated arguments, up to
+     * the end of the client's input.
+     * @param client the connection to the client.
+     * @return the arguments.
+     */
+    private static String[] readRequest(SocketChannel client)
+        throws IOException {
+        InputStream in = Channels.newInputStream(client);
+        byte[] request = in.readAllBytes();
+        List<String> args = new ArrayList<>();
+        int start = 0;
+        for (int k = 0; k < request.length; k += 1) {
+            if (request[k] == 0) {
+                args.add(new String(request, start, k - start,
+                        StandardCharsets.UTF_8));
+                start = k + 1;
+            }
+        }
+        return args.toArray(new String[0]);
+    }
+
+    /** Returns true iff the command ARGS writes nothing at all: it
+     *  only reads a setting. */
+    private static boolean isReadOnly(String[] args) {
+        return args.length == 2 && args[0].equals("config");
+    }
+
+    /** The stream System.out is set to while serving: what a thread
+     * writes goes to the client that thread is serving, or else to the
+     * server's own standard output. */
+    private static class ThreadOutput extends OutputStream {
+        /** ThreadOutput Constructor.
+         * @param standard the server's own standard output.
+         */
+        ThreadOutput(OutputStream standard) {
+            fallback = standard;
+        }
+
+        /** Returns the stream of the current thread. */
+        private OutputStream target() {
+            OutputStream out = OUTPUT.get();
+            return out == null ? fallback : out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target().flush();
+        }
+
+        /** The server's own standard output.*/
+        private final OutputStream fallback;
+    }
+
+    /** The socket the server listens on.*/
+    static final File SOCKET_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "daemon.sock");
+
+    /** Size of the buffer of the output sent to a client.*/
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+    /** Lock held (shared) by the commands that write nothing, and
+     * (exclusively) by the others.*/
+    private static final ReentrantReadWriteLock LOCK =
+        new ReentrantReadWriteLock();
+    /** The output of the client each thread is serving.*/
+    private static final ThreadLocal<OutputStream> OUTPUT =
+        new ThreadLocal<>();
+
+    /** The socket the server accepts connections on, while serving.*/
+    private static ServerSocketChannel listener;
+}
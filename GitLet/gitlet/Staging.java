@@ -20,11 +20,11 @@ public class Staging implements Serializable {
         stagedBlobs = new HashMap<>();
     }
 
-    public void addBlobs(String blobName, Blob addedBlob) {
+    public void addBlobs(String blobName, String addedBlob) {
         stagedBlobs.put(blobName, addedBlob);
     }
 
-    public void removeBlobs(String blobName, Blob removedBlob) {
+    public void removeBlobs(String blobName, String removedBlob) {
         removedBlobs.put(blobName, removedBlob);
     }
 
@@ -41,24 +41,66 @@ public class Staging implements Serializable {
         removedBlobs.remove(fileName);
     }
 
-    public Map<String, Blob> getRemovedBlobs() {
+    public Map<String, String> getRemovedBlobs() {
         return removedBlobs;
     }
 
-    public Map<String, Blob> getStagedBlobs() {
+    public Map<String, String> getStagedBlobs() {
         return stagedBlobs;
     }
 
+    /** Function that is used to get the staging area saved in the
+     * gitlet repository.
+     * @return The staging object that was read.
+     */
+    public static Staging getStagingArea() {
+        File currentStageFile = Utils.join(".gitlet", "stage");
+        return decode(Journal.read(currentStageFile));
+    }
+
     /** Function that creates a staging area inside the gitlet repository.
-     * It saves the current state of the staging area after changes.
+     * It saves the current state of the staging area after changes,
+     * through the journal (see Journal).
      * */
     public void saveCurrentStagingArea() {
         File currentStageFile = Utils.join(".gitlet", "stage");
-        Utils.writeObject(currentStageFile, this);
+        Journal.write(currentStageFile, encode());
+    }
+
+    /** Function that encodes the staging area (see Codec): the files
+     * staged for addition, then those staged for removal, each sorted by
+     * name.
+     * @return the encoding.
+     */
+    byte[] encode() {
+        Codec out = new Codec(Codec.STAGING);
+        out.putIdMap(stagedBlobs);
+        out.putIdMap(removedBlobs);
+        return out.toByteArray();
+    }
+
+    /** Function that decodes a staging area, encoded or, if it was
+     * written by an older version, serialized.
+     * @param stored the stored bytes.
+     * @return the staging area.
+     */
+    static Staging decode(byte[] stored) {
+        if (Codec.isSerialized(stored)) {
+            return Utils.deserialize(stored, Staging.class);
+        }
+        Codec in = new Codec(stored, Codec.STAGING);
+        Staging result = new Staging();
+        in.getIdMap(result.stagedBlobs);
+        in.getIdMap(result.removedBlobs);
+        return result;
     }
 
-    /** Map representing all the staged blobs.*/
-    private Map<String, Blob> stagedBlobs;
-    /** Map representing all the removed blobs.*/
-    private Map<String, Blob> removedBlobs;
+    /** Pinned so that staging areas written by Java serialization
+     * remain readable.*/
+    private static final long serialVersionUID = 1065880507815486665L;
+
+    /** Map representing all the staged blobs (file name to blob id).*/
+    private Map<String, String> stagedBlobs;
+    /** Map representing all the removed blobs (file name to blob id).*/
+    private Map<String, String> removedBlobs;
 }
@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** This class represents the stat cache: for every working file whose
+ * blob id is known, by name (see Gitlet.nameOf), the size, modification
+ * time and file key (device and inode) the file had when its id was
+ * computed. As long as a file's
+ * metadata still matches, its id is taken from the cache instead of
+ * hashing the file again, so status and add only read the files that
+ * changed.
+ *
+ * It is saved in .gitlet/index, written to a temporary file and renamed
+ * into place. It is only a cache, so it does not go through the
+ * journal: if it is missing or cannot be read, it starts out empty and
+ * every file is hashed once more. An entry is only trusted if the file was
+ * modified strictly before the first save of the index that held the
+ * entry: a file changed again within the same clock tick would
+ * otherwise look unchanged. Later saves do not count, since the file
+ * may have changed after its id was computed but before them.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class StatIndex implements Serializable {
+
+    /** StatIndex Constructor: an empty cache. */
+    private StatIndex() {
+        entries = new HashMap<>();
+    }
+
+    /** Function that returns the stat cache of the repository, reading it
+     * the first time it is asked for.
+     * @return the stat cache.
+     */
+    static synchronized StatIndex get() {
+        if (current == null) {
+            try {
+                current = Utils.readObject(INDEX_FILE, StatIndex.class);
+                current.saved(TimeUnit.MILLISECONDS.toNanos(
+                        INDEX_FILE.lastModified()));
+            } catch (IllegalArgumentException excp) {
+                current = new StatIndex();
+            }
+        }
+        return current;
+    }
+
+    /** Function that saves the stat cache if it was changed. */
+    static synchronized void saveIfChanged() {
+        if (current != null && current.changed) {
+            current.changed = false;
+            File temp = Blob.newTempFile();
+            Utils.writeObject(temp, current);
+            try {
+                Files.move(temp.toPath(), INDEX_FILE.toPath(),
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException excp) {
+                temp.delete();
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            current.saved(TimeUnit.MILLISECONDS.toNanos(
+                    INDEX_FILE.lastModified()));
+        }
+    }
+
+    /** Function that stamps the entries saved for the first time.
+     * @param savedAt when the index was saved, in nanoseconds.
+     */
+    private void saved(long savedAt) {
+        for (Entry entry : entries.values()) {
+            if (entry.savedAt == 0) {
+                entry.savedAt = savedAt;
+            }
+        }
+    }
+
+    /** Function that returns the cached blob id of a working file.
+     * @param file the working file.
+     * @return its blob id, or null if the file does not exist or has
+     * changed (or may have) since its id was recorded.
+     */
+    synchronized String lookup(File file) {
+        Entry entry = entries.get(Gitlet.nameOf(file));
+        BasicFileAttributes attrs = stat(file);
+        if (entry == null || attrs == null || !entry.matches(attrs)
+                || entry.mtime >= entry.savedAt) {
+            return null;
+        }
+        return entry.blobID;
+    }
+
+    /** Function that returns the blob id of a working file, hashing it
+     * (without storing it) only if the cache does not know it.
+     * @param file the working file, which must exist.
+     * @return its blob id.
+     */
+    String idOf(File file) {
+        String result = lookup(file);
+        if (result == null) {
+            result = Blob.hashFile(file);
+            record(file, result);
+        }
+        return result;
+    }
+
+    /** Function that records the blob id of a working file, together
+     * with its current metadata.
+     * @param file the working file.
+     * @param blobID the id of its contents.
+     */
+    synchronized void record(File file, String blobID) {
+        BasicFileAttributes attrs = stat(file);
+        if (attrs != null) {
+            entries.put(Gitlet.nameOf(file), new Entry(attrs, blobID));
+            changed = true;
+        }
+    }
+
+    /** Function that forgets a working file.
+     * @param file the working file.
+     */
+    synchronized void forget(File file) {
+        if (entries.remove(Gitlet.nameOf(file)) != null) {
+            changed = true;
+        }
+    }
+
+    /** Function that reads the metadata of a file.
+     * @param file the file.
+     * @return its attributes, or null if it is not a regular file.
+     */
+    private static BasicFileAttributes stat(File file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(),
+                    BasicFileAttributes.class);
+            return attrs.isRegularFile() ? attrs : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** The metadata and blob id of one working file. */
+    private static class Entry implements Serializable {
+        /** Entry Constructor.
+         * @param attrs the metadata of the file.
+         * @param itsBlobID the id of its contents.
+         */
+        Entry(BasicFileAttributes attrs, String itsBlobID) {
+            size = attrs.size();
+            mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+            key = String.valueOf(attrs.fileKey());
+            blobID = itsBlobID;
+        }
+
+        /** Returns true iff ATTRS are the metadata this entry recorded. */
+        boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                && mtime == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                && key.equals(String.valueOf(attrs.fileKey()));
+        }
+
+        /** Size of the file, in bytes.*/
+        private final long size;
+        /** Modification time of the file, in nanoseconds.*/
+        private final long mtime;
+        /** The file key (device and inode), or "null" if there is none.*/
+        private final String key;
+        /** The id of the contents of the file.*/
+        private final String blobID;
+        /** When the index was first saved with this entry, in
+         * nanoseconds, or 0 if it has not been yet.*/
+        private long savedAt;
+
+        /** Version of the serialized form.*/
+        private static final long serialVersionUID = 1L;
+    }
+
+    /** The file the stat cache is saved in.*/
+    static final File INDEX_FILE = Utils.join(Gitlet.GITLET_DIRECTORY, "index");
+
+    /** The stat cache of the repository, once read.*/
+    private static StatIndex current;
+
+    /** The entries, by path relative to the working directory.*/
+    private final Map<String, Entry> entries;
+    /** Whether an entry was changed since the index was read.*/
+    private transient boolean changed;
+
+    /** Version of the serialized form.*/
+    private static final long serialVersionUID = 1L;
+}
@@ -0,0 +1,429 @@
+package gitlet;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** This class represents the commit summary log: what log and
+ * global-log print about each commit, kept apart from the commits so
+ * that printing the history reads no Commit (nor its map of blobs).
+ *
+ * .gitlet/summaries is the magic "SUML" and the size of a record,
+ * followed by one fixed-width record per commit, appended when the
+ * commit is made: the binary id, the time in seconds, the binary ids of
+ * the two parents (zeros if absent), the position of the first parent's
+ * record (-1 if it has none), and the offset and length of the commit's
+ * text in .gitlet/summaries.msg, which holds the texts back to back in
+ * UTF-8. A text is the time stamp exactly as the commit has it, a
+ * newline and the message.
+ * Both files are memory-mapped and streamed through a buffered writer.
+ * log looks for the head from the last record back (it is most often
+ * one of the last) and then follows the recorded positions, so it uses
+ * constant memory. A record cut short by a crash is cut off before the
+ * next one is appended. The log is rebuilt from the commits if the
+ * record file is missing or in another format.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class SummaryLog {
+
+    /** SummaryLog Constructor: the log whose records and messages are
+     * mapped in RECORDS and MESSAGES.
+     * @param records the mapped record file, header included.
+     * @param messages the mapped text file.
+     */
+    private SummaryLog(ByteBuffer records, ByteBuffer messages) {
+        summaries = records;
+        texts = messages;
+        idLength = Utils.idBytes();
+        positionAt = parentsAt(idLength) + 2 * idLength;
+        textAt = positionAt + 4;
+        recordSize = recordSize(idLength);
+        count = (records.capacity() - HEADER_SIZE) / recordSize;
+    }
+
+    /** Function that maps the summary log, building it first if needed.
+     * @return the summary log.
+     */
+    private static synchronized SummaryLog open() {
+        ByteBuffer records = mapRecords();
+        if (records == null) {
+            rebuild();
+            records = mapRecords();
+        }
+        return new SummaryLog(records, map(MESSAGES_FILE));
+    }
+
+    /** Function that prints the log of the current branch: the commits
+     * from HEADID back to the initial commit, following first parents.
+     * @param headID the id of the head commit.
+     */
+    static void printLog(String headID) {
+        SummaryLog log = open();
+        int k = log.find(headID);
+        if (k < 0) {
+            rebuild();
+            log = open();
+            k = log.find(headID);
+        }
+        try (Writer out = newWriter()) {
+            while (k >= 0) {
+                log.print(k, out);
+                k = log.firstParent(k);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that prints every commit ever made, in the order they
+     * were recorded.
+     */
+    static void printAll() {
+        SummaryLog log = open();
+        try (Writer out = newWriter()) {
+            for (int k = 0; k < log.count; k += 1) {
+                log.print(k, out);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that finds the commits whose messages contain the given
+     * text, reading only the mapped texts, one at a time.
+     * @param text the text to look for.
+     * @return the ids of the commits, in the order they were recorded.
+     */
+    static List<String> containing(String text) {
+        SummaryLog log = open();
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < log.count; k += 1) {
+            String summary = log.textOf(k);
+            if (summary.indexOf(text, summary.indexOf('\n') + 1) >= 0) {
+                result.add(log.id(log.at(k)));
+            }
+        }
+        return result;
+    }
+
+    /** Function that prints the entry of the commit at position K.
+     * Merge commits also show the abbreviated ids of their parents.
+     * @param k the position of the commit.
+     * @param out the writer to print to.
+     */
+    private void print(int k, Writer out) throws IOException {
+        int at = at(k);
+        out.write("===\ncommit ");
+        out.write(id(at));
+        out.write('\n');
+        String second = parent(k, 1);
+        if (second != null) {
+            out.write("Merge: ");
+            out.write(parent(k, 0), 0, 7);
+            out.write(' ');
+            out.write(second, 0, 7);
+            out.write('\n');
+        }
+        out.write("Date: ");
+        out.write(textOf(k));
+        out.write("\n\n");
+    }
+
+    /** Returns the text of the commit at position K: its time stamp, a
+     *  newline and its message. */
+    private String textOf(int k) {
+        int at = at(k);
+        ByteBuffer text = texts.slice((int) summaries.getLong(at + textAt),
+                summaries.getInt(at + textAt + 8));
+        return StandardCharsets.UTF_8.decode(text).toString();
+    }
+
+    /** Returns the position of the commit named ID, looking from the last
+     *  record back, or -1 if the log does not have it. */
+    private int find(String id) {
+        byte[] key = Pack.fromHex(id);
+        for (int k = count - 1; k >= 0; k -= 1) {
+            int at = at(k), i = 0;
+            while (i < key.length && summaries.get(at + i) == key[i]) {
+                i += 1;
+            }
+            if (i == key.length) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns the position of the first parent of the commit at
+     *  position K, or -1 if it has none. It was recorded with the
+     *  commit, and is only looked for if the log did not have the parent
+     *  then. */
+    private int firstParent(int k) {
+        int result = summaries.getInt(at(k) + positionAt);
+        if (result < 0) {
+            String parent = parent(k, 0);
+            result = parent == null ? -1 : find(parent);
+        }
+        return result;
+    }
+
+    /** Returns the byte at which the record at position K starts. */
+    private int at(int k) {
+        return HEADER_SIZE + k * recordSize;
+    }
+
+    /** Returns the id at byte AT of the records. */
+    private String id(int at) {
+        byte[] id = new byte[idLength];
+        summaries.get(at, id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the id of parent WHICH (0 or 1) of the commit at position
+     *  K, or null if it has no such parent. */
+    private String parent(int k, int which) {
+        int at = at(k) + parentsAt(idLength) + which * idLength;
+        for (int i = 0; i < idLength; i += 1) {
+            if (summaries.get(at + i) != 0) {
+                return id(at);
+            }
+        }
+        return null;
+    }
+
+    /** Function that appends the summary of a new commit to the log.
+     * @param commitID the id of the new commit.
+     * @param commit the new commit.
+     */
+    static synchronized void add(String commitID, Commit commit) {
+        ByteBuffer records = mapRecords();
+        if (records == null) {
+            rebuild();
+            return;
+        }
+        SummaryLog log = new SummaryLog(records, null);
+        List<String> parents = commit.getParents();
+        int first = parents.isEmpty() ? -1 : log.find(parents.get(0));
+        byte[] text = text(commit);
+        ByteBuffer record = ByteBuffer.allocate(log.recordSize);
+        putRecord(record, commitID, commit, first, MESSAGES_FILE.length(),
+                text.length);
+        record.flip();
+        appendTo(MESSAGES_FILE, ByteBuffer.wrap(text));
+        appendTo(RECORDS_FILE, record);
+    }
+
+    /** Function that writes the log anew from all the commits in the
+     * repository. The record file is deleted first, so that a rebuild
+     * cut short is done again.
+     */
+    static synchronized void rebuild() {
+        List<String> ids = Gitlet.allCommitIDs();
+        Map<String, Integer> positions = new HashMap<>(2 * ids.size());
+        for (int k = 0; k < ids.size(); k += 1) {
+            positions.put(ids.get(k), k);
+        }
+        int recordSize = recordSize(Utils.idBytes());
+        ByteBuffer records = ByteBuffer.allocate(HEADER_SIZE
+                + ids.size() * recordSize);
+        records.putInt(MAGIC).putInt(recordSize);
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        for (String commitID : ids) {
+            Commit commit = Commit.getCommit(commitID);
+            List<String> parents = commit.getParents();
+            Integer first = parents.isEmpty() ? null
+                : positions.get(parents.get(0));
+            byte[] text = text(commit);
+            putRecord(records, commitID, commit, first == null ? -1 : first,
+                    messages.size(), text.length);
+            messages.write(text, 0, text.length);
+        }
+        records.flip();
+        RECORDS_FILE.delete();
+        replace(MESSAGES_FILE, ByteBuffer.wrap(messages.toByteArray()));
+        replace(RECORDS_FILE, records);
+    }
+
+    /** Returns the text of COMMIT: its time stamp, a newline and its
+     *  message, in UTF-8. */
+    private static byte[] text(Commit commit) {
+        return (commit.getTimeStamp() + "\n"
+            + commit.getTheMessage()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Function that puts the record of a commit into OUT.
+     * @param out the buffer receiving the record.
+     * @param commitID the id of the commit.
+     * @param commit the commit.
+     * @param first the position of its first parent's record, or -1.
+     * @param textStart the offset of its text.
+     * @param textLength the length of its text.
+     */
+    private static void putRecord(ByteBuffer out, String commitID,
+                                  Commit commit, int first, long textStart,
+                                  int textLength) {
+        out.put(Pack.fromHex(commitID));
+        out.putLong(commit.getTime());
+        List<String> parents = commit.getParents();
+        for (int which = 0; which < 2; which += 1) {
+            out.put(which < parents.size() ? Pack.fromHex(parents.get(which))
+                    : new byte[Utils.idBytes()]);
+        }
+        out.putInt(first);
+        out.putLong(textStart);
+        out.putInt(textLength);
+    }
+
+    /** Returns the position of the parents within a record whose ids
+     *  are IDLENGTH bytes long: after the id and the time. */
+    private static int parentsAt(int idLength) {
+        return idLength + 8;
+    }
+
+    /** Returns the size of a record whose ids are IDLENGTH bytes long:
+     *  id, time, two parents, position of the first parent, and offset
+     *  and length of the text. */
+    private static int recordSize(int idLength) {
+        return parentsAt(idLength) + 2 * idLength + 4 + 8 + 4;
+    }
+
+    /** Function that maps the record file, first cutting off the end of
+     * a record whose append was cut short, so that every record stays
+     * in its place.
+     * @return the mapped file, made of the header and whole records, or
+     * null if it is missing or in another format.
+     */
+    private static ByteBuffer mapRecords() {
+        if (!RECORDS_FILE.isFile()) {
+            return null;
+        }
+        int recordSize = recordSize(Utils.idBytes());
+        try (FileChannel channel = FileChannel.open(RECORDS_FILE.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.read(header, 0) < HEADER_SIZE
+                    || header.getInt(0) != MAGIC
+                    || header.getInt(4) != recordSize) {
+                return null;
+            }
+            long torn = (size - HEADER_SIZE) % recordSize;
+            if (torn != 0) {
+                channel.truncate(size - torn);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    size - torn);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that appends BYTES to FILE.
+     * @param file the file to append to.
+     * @param bytes the bytes to append.
+     */
+    private static void appendTo(File file, ByteBuffer bytes) {
+        try (FileChannel out = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that replaces FILE by BYTES, written to a temporary file
+     * and renamed into place.
+     * @param file the file to replace.
+     * @param bytes its new contents.
+     */
+    private static void replace(File file, ByteBuffer bytes) {
+        File temp = Blob.newTempFile();
+        try {
+            try (FileChannel out = FileChannel.open(temp.toPath(),
+                    StandardOpenOption.WRITE)) {
+                while (bytes.hasRemaining()) {
+                    out.write(bytes);
+                }
+            }
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            temp.delete();
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that maps the whole of FILE read-only.
+     * @param file the file to map.
+     * @return the mapped buffer.
+     */
+    private static ByteBuffer map(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Function that returns a buffered writer on the standard output;
+     * closing it only flushes it.
+     * @return the writer.
+     */
+    private static Writer newWriter() {
+        return new BufferedWriter(new OutputStreamWriter(System.out),
+                OUTPUT_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+    }
+
+    /** The summary records.*/
+    static final File RECORDS_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "summaries");
+    /** The time stamps and messages of the commits.*/
+    static final File MESSAGES_FILE =
+        Utils.join(Gitlet.GITLET_DIRECTORY, "summaries.msg");
+
+    /** Magic number at the start of the records ("SUML").*/
+    private static final int MAGIC = 0x53554d4c;
+    /** Size of the header of the records, in bytes.*/
+    private static final int HEADER_SIZE = 8;
+    /** Size of the output buffer.*/
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+    /** The mapped records.*/
+    private final ByteBuffer summaries;
+    /** The mapped texts, or null if the log is only appended to.*/
+    private final ByteBuffer texts;
+    /** Number of records.*/
+    private final int count;
+    /** Length of a binary commit id.*/
+    private final int idLength;
+    /** Position within a record of the position of the first parent.*/
+    private final int positionAt;
+    /** Position within a record of the offset and length of the text.*/
+    private final int textAt;
+    /** Size of a record.*/
+    private final int recordSize;
+}
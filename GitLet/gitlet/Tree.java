@@ -0,0 +1,287 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** This class represents a tree: the contents of one directory of a
+ * commit, mapping the name of each file to the id of its blob and the
+ * name of each subdirectory to the id of its tree. A tree is named by
+ * the hash of its encoding (see Codec), so two directories with the
+ * same contents have the same id, and a directory that did not change
+ * between two commits is recognized by comparing one id, without
+ * looking inside.
+ *
+ * Trees are stored in .gitlet/Tree, one per file, and moved into the
+ * pack by repack like blobs and commits. A commit only holds the id of
+ * its root tree; a new commit's trees are made from its parent's by
+ * rewriting just the directories on the paths that changed.
+ *  @author Hiva Mohammadzadeh
+ */
+
+class Tree implements Serializable {
+
+    /** Tree Constructor: an empty directory. */
+    private Tree() {
+        blobs = new TreeMap<>();
+        trees = new TreeMap<>();
+    }
+
+    /** Tree Constructor: a copy of OTHER, to be changed.
+     * @param other the tree to copy.
+     */
+    private Tree(Tree other) {
+        blobs = new TreeMap<>(other.blobs);
+        trees = new TreeMap<>(other.trees);
+    }
+
+    /** Function that reads the tree with the given id from the tree
+     * store (the Tree directory, or else the pack). Trees never change,
+     * so the recently read ones are kept in a bounded cache.
+     * @param treeID the id of the tree, or null for an empty tree.
+     * @return the tree.
+     */
+    static Tree getTree(String treeID) {
+        if (treeID == null) {
+            return EMPTY;
+        }
+        synchronized (CACHE) {
+            Tree cached = CACHE.get(treeID);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] stored = Gitlet.trees.get(treeID);
+        if (stored == null) {
+            throw new IllegalArgumentException("no such tree " + treeID);
+        }
+        Tree result = decode(stored);
+        synchronized (CACHE) {
+            CACHE.put(treeID, result);
+        }
+        return result;
+    }
+
+    /** Function that makes the trees of a set of files.
+     * @param files the files, by path, with the ids of their blobs.
+     * @return the id of the root tree.
+     */
+    static String build(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /** Function that makes the trees of a changed copy of a tree. Only
+     * the directories on the paths of CHANGES are rewritten; the ids of
+     * the other subtrees are kept as they are. A directory left empty is
+     * dropped from its parent.
+     * @param baseID the id of the tree to change, or null for none.
+     * @param changes the new blob id of each changed path, or null for a
+     *                path that is removed.
+     * @return the id of the new tree.
+     */
+    static String update(String baseID, Map<String, String> changes) {
+        Tree result = new Tree(getTree(baseID));
+        Map<String, Map<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                    dir -> new HashMap<>()).put(path.substring(slash + 1),
+                        change.getValue());
+            } else if (change.getValue() == null) {
+                result.blobs.remove(path);
+            } else {
+                result.blobs.put(path, change.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> dir : below.entrySet()) {
+            String subtreeID = update(result.trees.get(dir.getKey()),
+                    dir.getValue());
+            if (getTree(subtreeID).isEmpty()) {
+                result.trees.remove(dir.getKey());
+            } else {
+                result.trees.put(dir.getKey(), subtreeID);
+            }
+        }
+        return result.save();
+    }
+
+    /** Function that lists every file under a tree.
+     * @param treeID the id of the tree.
+     * @return the blob id of each file, by path.
+     */
+    static Map<String, String> flatten(String treeID) {
+        Map<String, String> result = new HashMap<>();
+        flatten(treeID, "", result);
+        return result;
+    }
+
+    /** Function that adds every file under a tree to OUT.
+     * @param treeID the id of the tree.
+     * @param prefix the path of the tree's directory, ending in '/', or
+     *               the empty string for the root.
+     * @param out map receiving the blob id of each file, by path.
+     */
+    private static void flatten(String treeID, String prefix,
+                                Map<String, String> out) {
+        Tree tree = getTree(treeID);
+        for (Map.Entry<String, String> blob : tree.blobs.entrySet()) {
+            out.put(prefix + blob.getKey(), blob.getValue());
+        }
+        for (Map.Entry<String, String> subtree : tree.trees.entrySet()) {
+            flatten(subtree.getValue(), prefix + subtree.getKey() + "/", out);
+        }
+    }
+
+    /** Function that returns the blob id of one file of a tree, reading
+     * only the trees of the directories on its path.
+     * @param treeID the id of the tree.
+     * @param path the path of the file.
+     * @return the id of its blob, or null if the tree has no such file.
+     */
+    static String blobAt(String treeID, String path) {
+        Tree tree = getTree(treeID);
+        int slash = path.indexOf('/');
+        while (slash >= 0) {
+            String subtreeID = tree.trees.get(path.substring(0, slash));
+            if (subtreeID == null) {
+                return null;
+            }
+            tree = getTree(subtreeID);
+            path = path.substring(slash + 1);
+            slash = path.indexOf('/');
+        }
+        return tree.blobs.get(path);
+    }
+
+    /** Function that finds the files that differ between two trees.
+     * Subtrees with the same id in both are skipped without being read,
+     * so the work is proportional to what changed.
+     * @param fromID the id of the first tree, or null for none.
+     * @param toID the id of the second tree, or null for none.
+     * @return the blob id in the second tree of each path that differs,
+     * or null for a path the second tree does not have.
+     */
+    static Map<String, String> changes(String fromID, String toID) {
+        Map<String, String> result = new TreeMap<>();
+        changes(fromID, toID, "", result);
+        return result;
+    }
+
+    /** Function that adds the files that differ between two trees to OUT.
+     * @param fromID the id of the first tree, or null for none.
+     * @param toID the id of the second tree, or null for none.
+     * @param prefix the path of the trees' directory, ending in '/', or
+     *               the empty string for the root.
+     * @param out map receiving the changes (see changes(String, String)).
+     */
+    private static void changes(String fromID, String toID, String prefix,
+                                Map<String, String> out) {
+        if (Objects.equals(fromID, toID)) {
+            return;
+        }
+        Tree from = getTree(fromID), to = getTree(toID);
+        TreeSet<String> names = new TreeSet<>(from.blobs.keySet());
+        names.addAll(to.blobs.keySet());
+        for (String name : names) {
+            if (!Objects.equals(from.blobs.get(name), to.blobs.get(name))) {
+                out.put(prefix + name, to.blobs.get(name));
+            }
+        }
+        names = new TreeSet<>(from.trees.keySet());
+        names.addAll(to.trees.keySet());
+        for (String name : names) {
+            changes(from.trees.get(name), to.trees.get(name),
+                    prefix + name + "/", out);
+        }
+    }
+
+    /** Returns the ids of the blobs of the files of this directory. */
+    Collection<String> blobIDs() {
+        return Collections.unmodifiableCollection(blobs.values());
+    }
+
+    /** Returns the ids of the trees of the subdirectories of this
+     *  directory. */
+    Collection<String> subtreeIDs() {
+        return Collections.unmodifiableCollection(trees.values());
+    }
+
+    /** Returns true iff this directory holds nothing. */
+    private boolean isEmpty() {
+        return blobs.isEmpty() && trees.isEmpty();
+    }
+
+    /** Function that writes this tree to the tree store, unless a
+     * tree with the same contents is already stored.
+     * @return the id of the tree.
+     */
+    private String save() {
+        byte[] contents = encode();
+        String treeID = Utils.hash(contents);
+        if (!Gitlet.trees.has(treeID)) {
+            Gitlet.trees.put(treeID, contents);
+        }
+        synchronized (CACHE) {
+            CACHE.put(treeID, this);
+        }
+        return treeID;
+    }
+
+    /** Function that encodes this tree (see Codec): its files and its
+     * subdirectories, each sorted by name.
+     * @return the encoding.
+     */
+    private byte[] encode() {
+        Codec out = new Codec(Codec.TREE);
+        out.putIdMap(blobs);
+        out.putIdMap(trees);
+        return out.toByteArray();
+    }
+
+    /** Function that decodes a stored tree, encoded or, if it was
+     * written by an older version, serialized.
+     * @param stored the stored bytes.
+     * @return the tree.
+     */
+    private static Tree decode(byte[] stored) {
+        if (Codec.isSerialized(stored)) {
+            return Utils.deserialize(stored, Tree.class);
+        }
+        Codec in = new Codec(stored, Codec.TREE);
+        Tree result = new Tree();
+        in.getIdMap(result.blobs);
+        in.getIdMap(result.trees);
+        return result;
+    }
+
+    /** The tree of an empty directory.*/
+    private static final Tree EMPTY = new Tree();
+    /** Number of trees kept in the cache.*/
+    private static final int CACHE_SIZE = 4096;
+    /** The trees recently read or written, by id, least recently used
+     * first.*/
+    private static final Map<String, Tree> CACHE =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tree> e) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    /** Pinned so that trees written by Java serialization
+     * remain readable.*/
+    private static final long serialVersionUID = -3853305182929287906L;
+
+    /** The files of the directory: file name to blob id.*/
+    private final TreeMap<String, String> blobs;
+    /** The subdirectories of the directory: directory name to tree id.*/
+    private final TreeMap<String, String> trees;
+}
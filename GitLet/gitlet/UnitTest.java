@@ -4,6 +4,15 @@ import ucb.junit.textui;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 /** The suite of all JUnit tests for the gitlet package.
  *  @author Hiva Mohammadzadeh
  */
@@ -20,6 +29,157 @@ public class UnitTest {
     public void placeholderTest() {
     }
 
+    /** Diff finds a longest common subsequence and the edits around it. */
+    @Test
+    public void diffSmallTest() {
+        Diff diff = new Diff();
+        diff.setSequences(Arrays.asList("a", "b", "c", "a", "b", "b", "a"),
+                Arrays.asList("c", "b", "a", "b", "a", "c"));
+        assertEquals(4, diff.lls());
+        assertEquals(1, diff.lls(3, 2));
+        assertEquals(0, diff.lls(0, 6));
+        assertEquals(diff.sequence2(), applyDiffs(diff));
+        assertFalse(diff.sequencesEqual());
+    }
+
+    /** Diff handles long, similar sequences without a quadratic table. */
+    @Test
+    public void diffLargeTest() {
+        List<String> first = new ArrayList<>();
+        for (int i = 0; i < 200000; i += 1) {
+            first.add("line " + i);
+        }
+        List<String> second = new ArrayList<>(first);
+        second.remove(150000);
+        second.set(1000, "changed");
+        second.add(5, "inserted");
+        Diff diff = new Diff();
+        diff.setSequences(first, second);
+        assertEquals(first.size() - 2, diff.lls());
+        assertArrayEquals(new int[] {5, 0, 5, 1, 1000, 1, 1001, 1,
+                                     150000, 1, 150001, 0},
+                diff.diffs());
+        assertEquals(second, applyDiffs(diff));
+    }
+
+    /** Anchored diffs never find a longer common subsequence, and still
+     *  turn the first sequence into the second. */
+    @Test
+    public void diffAnchoredTest() {
+        List<String> first = new ArrayList<>();
+        for (int i = 0; i < 30000; i += 1) {
+            first.add(i % 7 == 0 ? "}" : "line " + i);
+        }
+        List<String> second = new ArrayList<>(first);
+        second.subList(100, 200).clear();
+        second.addAll(20000, first.subList(100, 200));
+        second.set(25000, "changed");
+        Diff diff = new Diff();
+        diff.setSequences(first, second);
+        int best = diff.lls();
+        diff.setAnchored(true);
+        assertTrue(diff.isAnchored());
+        assertTrue(diff.lls() <= best);
+        assertEquals(first.size() - 101, diff.lls());
+        assertEquals(second, applyDiffs(diff));
+    }
+
+    /** Encoded staging areas read back equal, and do not depend on the
+     *  order the files were staged in. */
+    @Test
+    public void codecStagingTest() {
+        String id1 = Utils.sha1("one"), id2 = Utils.sha1("two");
+        Staging first = new Staging(), second = new Staging();
+        first.addBlobs("a.txt", id1);
+        first.addBlobs("d\u00e9j\u00e0/b.txt", id2);
+        first.removeBlobs("gone.txt", id2);
+        second.removeBlobs("gone.txt", id2);
+        second.addBlobs("d\u00e9j\u00e0/b.txt", id2);
+        second.addBlobs("a.txt", id1);
+        byte[] encoded = first.encode();
+        assertArrayEquals(encoded, second.encode());
+        Staging decoded = Staging.decode(encoded);
+        assertEquals(first.getStagedBlobs(), decoded.getStagedBlobs());
+        assertEquals(first.getRemovedBlobs(), decoded.getRemovedBlobs());
+    }
+
+    /** Ids are encoded as wide as the hash of the repository at hand,
+     *  even after ids of another hash were encoded in the same JVM. */
+    @Test
+    public void hashPerRepositoryTest() {
+        Staging narrow = new Staging();
+        narrow.addBlobs("a.txt", Utils.sha1("one"));
+        assertEquals(narrow.getStagedBlobs(),
+                Staging.decode(narrow.encode()).getStagedBlobs());
+        Journal.begin();
+        try {
+            Config.set(Config.HASH, "sha256");
+            String id = Utils.hash(new byte[] {1, 2, 3});
+            assertEquals(64, id.length());
+            Staging wide = new Staging();
+            wide.addBlobs("a.txt", id);
+            assertEquals(wide.getStagedBlobs(),
+                    Staging.decode(wide.encode()).getStagedBlobs());
+        } finally {
+            Journal.abort();
+        }
+        assertEquals(40, Utils.uidLength());
+    }
+
+    /** Loose and in-memory stores keep and list the same objects; loose
+     *  objects are spread over directories named by their first two
+     *  digits, and objects written flat by older versions are found. */
+    @Test
+    public void objectStoreTest() throws IOException {
+        File dir = Files.createTempDirectory("store").toFile();
+        String id1 = Utils.sha1("one"), id2 = Utils.sha1("two");
+        Utils.writeContents(new File(dir, id2), "flat");
+        ObjectStore[] stores = {new LooseStore(dir), new MemoryStore()};
+        List<String> expected = new ArrayList<>(Arrays.asList(id1, id2));
+        Collections.sort(expected);
+        for (ObjectStore store : stores) {
+            if (store instanceof MemoryStore) {
+                store.put(id2, "flat".getBytes(StandardCharsets.UTF_8));
+            }
+            assertFalse(store.has(id1));
+            assertNull(store.get(id1));
+            store.put(id1, new byte[] {1, 2, 3});
+            assertTrue(store.has(id1));
+            assertArrayEquals(new byte[] {1, 2, 3}, store.get(id1));
+            assertEquals("flat", new String(store.get(id2),
+                    StandardCharsets.UTF_8));
+            List<String> ids = store.ids();
+            Collections.sort(ids);
+            assertEquals(expected, ids);
+            assertEquals(3, store.delete(id1));
+            assertFalse(store.has(id1));
+        }
+        assertTrue(Utils.join(dir, id1.substring(0, 2)).isDirectory());
+    }
+
+    /** Return the result of applying the edits of DIFF to its first
+     *  sequence. */
+    private static List<String> applyDiffs(Diff diff) {
+        int[] edits = diff.diffs();
+        List<String> result = new ArrayList<>();
+        int next = 0;
+        for (int k = 0; k < edits.length; k += 4) {
+            while (next < edits[k]) {
+                result.add(diff.get1(next));
+                next += 1;
+            }
+            next += edits[k + 1];
+            for (int i = 0; i < edits[k + 3]; i += 1) {
+                result.add(diff.get2(edits[k + 2] + i));
+            }
+        }
+        while (next < diff.sequence1().size()) {
+            result.add(diff.get1(next));
+            next += 1;
+        }
+        return result;
+    }
+
 }
 
 
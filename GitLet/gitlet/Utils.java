@@ -3,6 +3,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -17,8 +18,9 @@ import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.Formatter;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 /** Assorted utilities.
@@ -28,8 +30,21 @@ class Utils {
 
     /* SHA-1 HASH VALUES. */
 
-    /** The length of a complete SHA-1 UID as a hexadecimal numeral. */
-    static final int UID_LENGTH = 40;
+    /** Returns the length of a complete UID of the repository (the hash
+     *  chosen by init, see Config.HASH) as a hexadecimal numeral: 40 for
+     *  SHA-1, 64 for SHA-256. */
+    static int uidLength() {
+        return 2 * idBytes();
+    }
+
+    /** Returns the length of a complete UID of the repository in bytes,
+     *  the width of every id stored in binary: 20 for SHA-1, 32 for
+     *  SHA-256. It is asked for each time, since the hash is set per
+     *  repository (and by init) rather than once per process. */
+    static int idBytes() {
+        return DIGEST_LENGTHS.computeIfAbsent(Config.get(Config.HASH),
+            hash -> newDigest().getDigestLength());
+    }
 
     /** Returns the SHA-1 hash of the concatenation of VALS, which may
      *  be any mixture of byte arrays and Strings. */
@@ -45,16 +60,58 @@ class Utils {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
             }
-            Formatter result = new Formatter();
-            for (byte b : md.digest()) {
-                result.format("%02x", b);
-            }
-            return result.toString();
+            return toHex(md.digest());
         } catch (NoSuchAlgorithmException excp) {
             throw new IllegalArgumentException("System does not support SHA-1");
         }
     }
 
+    /** Returns a fresh MessageDigest of the hash the repository names its
+     *  objects with (see Config.HASH), for hashing data that is streamed
+     *  rather than held in memory. */
+    static MessageDigest newDigest() {
+        String algorithm = HASHES.get(Config.get(Config.HASH));
+        if (algorithm == null) {
+            throw new IllegalArgumentException("unknown hash "
+                    + Config.get(Config.HASH));
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                    + algorithm);
+        }
+    }
+
+    /** Returns the UID of an object whose stored form is CONTENTS: its
+     *  hash with the repository's digest, as a hexadecimal numeral. */
+    static String hash(byte[] contents) {
+        return toHex(newDigest().digest(contents));
+    }
+
+    /** The hashes objects may be named with: the value of Config.HASH
+     *  and the name of its MessageDigest algorithm. */
+    static final Map<String, String> HASHES =
+        Map.of("sha1", "SHA-1", "sha256", "SHA-256");
+
+    /** The length in bytes of the digest of each hash, once known. */
+    private static final Map<String, Integer> DIGEST_LENGTHS =
+        new ConcurrentHashMap<>();
+
+    /** Returns DIGEST as a lower-case hexadecimal numeral. */
+    static String toHex(byte[] digest) {
+        char[] result = new char[2 * digest.length];
+        for (int i = 0; i < digest.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** The hexadecimal digits, in order. */
+    private static final char[] HEX_DIGITS =
+        "0123456789abcdef".toCharArray();
+
     /** Returns the SHA-1 hash of the concatenation of the strings in
      *  VALS. */
     static String sha1(List<Object> vals) {
@@ -220,6 +277,23 @@ class Utils {
 
 
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of
+     *  problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /* MESSAGES AND ERROR REPORTING */
 
     /** Return a GitletException whose message is composed from MSG and ARGS as